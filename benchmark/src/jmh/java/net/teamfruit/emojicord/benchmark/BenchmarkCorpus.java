@@ -0,0 +1,178 @@
+package net.teamfruit.emojicord.benchmark;
+
+import com.google.common.collect.Lists;
+import net.teamfruit.emojicord.emoji.Models.EmojiDiscord;
+import net.teamfruit.emojicord.emoji.Models.EmojiDiscordGroup;
+import net.teamfruit.emojicord.emoji.Models.EmojiDiscordList;
+import net.teamfruit.emojicord.emoji.Models.EmojiStandard;
+import net.teamfruit.emojicord.emoji.Models.EmojiStandardGroup;
+import net.teamfruit.emojicord.emoji.Models.EmojiStandardList;
+import net.teamfruit.emojicord.util.Base64Utils;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates emoji lists and chat lines shaped like a busy multiplayer chat, from a fixed seed so every run sees the same data.
+ * <p>
+ * Roughly: 3000 standard emojis with skin tone variants and a handful of emoticons,
+ * 24 Discord servers of 150 emojis with popular names repeated across servers,
+ * and chat where most lines have no emoji at all.
+ */
+public class BenchmarkCorpus {
+	public static final int STANDARD_COUNT = 3000;
+	public static final int DISCORD_LISTS = 24;
+	public static final int DISCORD_GROUPS = 3;
+	public static final int DISCORD_EMOJIS = 50;
+	public static final int MESSAGE_COUNT = 1024;
+
+	private static final String[] WORDS = {
+			"smile", "grin", "joy", "heart", "fire", "thumbs", "up", "down", "cat", "dog", "face", "eyes", "hand", "wave",
+			"clap", "pray", "sweat", "cry", "laugh", "wink", "kiss", "star", "sun", "moon", "cloud", "rain", "snow", "tree",
+			"flower", "apple", "pizza", "cake", "coffee", "beer", "ball", "game", "music", "note", "book", "pen", "lock",
+			"key", "bell", "gift", "flag", "red", "blue", "green", "yellow", "black", "white", "circle", "square", "arrow",
+			"check", "cross", "warning", "sparkles", "rocket", "ghost", "skull", "robot", "alien", "poop", "sleepy", "angry",
+			"thinking", "shrug", "ok", "party", "crown", "gem", "money", "clock", "house", "car", "train", "ship", "plane",
+	};
+	private static final String[] CHAT_WORDS = {
+			"hey", "anyone", "want", "to", "go", "mining", "later", "i", "found", "diamonds", "at", "the", "base", "lol",
+			"brb", "dinner", "gg", "nice", "build", "where", "is", "spawn", "who", "took", "my", "pickaxe", "server", "lag",
+			"again", "creeper", "blew", "up", "house", "need", "iron", "trade", "villager", "nether", "portal", "coords",
+			"x", "y", "z", "ok", "thanks", "np", "afk", "back", "wait", "for", "me", "farm", "redstone", "door", "broken",
+	};
+	private static final String[] EMOTICONS = { ":)", ":-)", ":D", ";)", ":(", ":P", "<3", ":o", ":|", ":'(" };
+	private static final String[] DISCORD_NAMES = { "pepe", "kek", "pog", "monkaS", "LUL", "Kappa", "blobwave", "catjam", "fire", "thinking" };
+
+	public final List<EmojiStandardList> standardLists = Lists.newArrayList();
+	public final List<EmojiDiscordList> discordLists = Lists.newArrayList();
+
+	public final List<String> standardNames = Lists.newArrayList();
+	public final List<String> standardSurrogates = Lists.newArrayList();
+	public final List<String> discordNames = Lists.newArrayList();
+	public final List<Long> discordIds = Lists.newArrayList();
+	public final String[] messages = new String[MESSAGE_COUNT];
+	/**
+	 * The {@link #messages} that hold at least one emoji, emoticon or emoji code.
+	 */
+	public final List<String> emojiMessages = Lists.newArrayList();
+
+	private final Random random = new Random(0x454d4f4aL);
+
+	public BenchmarkCorpus() {
+		createStandard();
+		createDiscord();
+		for (int i = 0; i<this.messages.length; i++)
+			this.messages[i] = createMessage();
+	}
+
+	private String pick(final String[] words) {
+		return words[this.random.nextInt(words.length)];
+	}
+
+	private <T> T pick(final List<T> list) {
+		return list.get(this.random.nextInt(list.size()));
+	}
+
+	private void createStandard() {
+		final EmojiStandardGroup group = new EmojiStandardGroup();
+		group.location = "https://twemoji.maxcdn.com/2/72x72/";
+		group.emojis = Lists.newArrayList();
+		for (int i = 0; i<STANDARD_COUNT; i++) {
+			final String name = i<WORDS.length ? WORDS[i] : WORDS[i%WORDS.length]+"_"+WORDS[i/WORDS.length];
+			final int codePoint = 0x1F300+i%0x700;
+			// Past the single code points, continue with joined sequences
+			final String surrogates = i<0x700 ? new String(Character.toChars(codePoint)) : new String(Character.toChars(codePoint))+"\u200D"+new String(Character.toChars(0x1F300+i/0x700));
+			group.emojis.add(createStandard(name, surrogates, Integer.toHexString(codePoint)+"-"+i+".png"));
+			this.standardNames.add(name);
+			this.standardSurrogates.add(surrogates);
+			if (i<EMOTICONS.length)
+				group.emojis.get(group.emojis.size()-1).strings.add(EMOTICONS[i]);
+			// Hands and faces come in five skin tones
+			if (i%10==0)
+				for (int tone = 1; tone<=5; tone++)
+					group.emojis.add(createStandard(name+":skin-tone-"+tone, surrogates+new String(Character.toChars(0x1F3FA+tone)), Integer.toHexString(codePoint)+"-"+Integer.toHexString(0x1F3FA+tone)+".png"));
+		}
+		final EmojiStandardList list = new EmojiStandardList();
+		list.groups = Lists.newArrayList(group);
+		this.standardLists.add(list);
+	}
+
+	private static EmojiStandard createStandard(final String name, final String surrogates, final String location) {
+		final EmojiStandard emoji = new EmojiStandard();
+		emoji.name = name;
+		emoji.surrogates = surrogates;
+		emoji.location = location;
+		emoji.strings = Lists.newArrayList(name);
+		return emoji;
+	}
+
+	private void createDiscord() {
+		for (int l = 0; l<DISCORD_LISTS; l++) {
+			final EmojiDiscordList list = new EmojiDiscordList();
+			list.name = "Server "+l;
+			list.id = Long.toString(randomSnowflake());
+			list.groups = Lists.newArrayList();
+			for (int g = 0; g<DISCORD_GROUPS; g++) {
+				final EmojiDiscordGroup group = new EmojiDiscordGroup();
+				group.name = list.name+" #"+g;
+				group.id = Long.toString(randomSnowflake());
+				group.emojis = Lists.newArrayList();
+				for (int e = 0; e<DISCORD_EMOJIS; e++) {
+					final EmojiDiscord emoji = new EmojiDiscord();
+					// Every server has its own pepe, and some names clash with standard emojis
+					emoji.name = e<DISCORD_NAMES.length ? DISCORD_NAMES[e] : pick(WORDS)+pick(CHAT_WORDS)+(this.random.nextBoolean() ? "" : Integer.toString(e));
+					final long id = randomSnowflake();
+					emoji.id = Long.toString(id);
+					group.emojis.add(emoji);
+					this.discordNames.add(emoji.name);
+					this.discordIds.add(id);
+				}
+				list.groups.add(group);
+			}
+			this.discordLists.add(list);
+		}
+	}
+
+	private long randomSnowflake() {
+		// Discord ids from 2017 to 2020 are 18 digits
+		return 300_000_000_000_000_000L+(this.random.nextLong()>>>1)%400_000_000_000_000_000L;
+	}
+
+	private String createMessage() {
+		final StringBuilder sb = new StringBuilder();
+		final int words = 3+this.random.nextInt(14);
+		final int kind = this.random.nextInt(100);
+		boolean emoji = false;
+		for (int i = 0; i<words; i++) {
+			if (i>0)
+				sb.append(' ');
+			if (kind<55||this.random.nextInt(4)!=0) {
+				sb.append(pick(CHAT_WORDS));
+				continue;
+			}
+			emoji = true;
+			if (kind<70)
+				sb.append(':').append(pick(this.standardNames)).append(':');
+			else if (kind<80)
+				sb.append(pick(this.standardSurrogates));
+			else if (kind<88)
+				sb.append(':').append(pick(this.discordNames)).append(':');
+			else if (kind<95) {
+				final int index = this.random.nextInt(this.discordNames.size());
+				sb.append("<:").append(this.discordNames.get(index)).append(':').append(Base64Utils.encode(this.discordIds.get(index))).append('>');
+			} else
+				sb.append(pick(EMOTICONS));
+		}
+		// Times, coordinates, formatting codes and placeholders all look a little like emojis
+		if (kind<55&&this.random.nextInt(5)==0)
+			sb.append(" at ").append(this.random.nextInt(24)).append(':').append(10+this.random.nextInt(50));
+		if (this.random.nextInt(10)==0)
+			sb.insert(0, "\u00A7e");
+		if (this.random.nextInt(20)==0)
+			sb.append(" {0}");
+		final String message = sb.toString();
+		if (emoji)
+			this.emojiMessages.add(message);
+		return message;
+	}
+}
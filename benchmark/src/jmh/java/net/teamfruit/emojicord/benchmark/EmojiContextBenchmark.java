@@ -0,0 +1,46 @@
+package net.teamfruit.emojicord.benchmark;
+
+import net.teamfruit.emojicord.emoji.EmojiContext;
+import net.teamfruit.emojicord.emoji.EmojiContext.EmojiContextCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * {@link EmojiContextCache#getContext} as the font renderer calls it.
+ * Chat redraws the same lines every frame, so {@link #cached} mostly hits; {@link #uncached} sees each line once.
+ * {@link #uncached} draws only from lines with emojis, since a line without any returns before the cache is consulted.
+ */
+@State(Scope.Thread)
+public class EmojiContextBenchmark {
+	/**
+	 * Combined {@link EmojiContext.EmojiContextAttribute#flag}s: 1 CHAT_INPUT, 2 CHAT_MESSAGE.
+	 */
+	@Param({ "0", "1", "2", "3" })
+	public int attributes;
+
+	private String[] messages;
+	private String[] emojiMessages;
+	private int next;
+	private long unique;
+
+	@Setup
+	public void setup(final EmojiDictionaryState state) {
+		this.messages = state.corpus.messages;
+		this.emojiMessages = state.corpus.emojiMessages.toArray(new String[0]);
+	}
+
+	@Benchmark
+	public EmojiContext cached() {
+		final String text = this.messages[this.next++&BenchmarkCorpus.MESSAGE_COUNT-1];
+		return EmojiContextCache.instance.getContext(text, this.attributes);
+	}
+
+	@Benchmark
+	public EmojiContext uncached() {
+		final String text = this.emojiMessages[this.next++%this.emojiMessages.length]+" "+this.unique++;
+		return EmojiContextCache.instance.getContext(text, this.attributes);
+	}
+}
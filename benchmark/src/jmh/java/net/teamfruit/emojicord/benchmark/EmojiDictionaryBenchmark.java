@@ -0,0 +1,43 @@
+package net.teamfruit.emojicord.benchmark;
+
+import net.teamfruit.emojicord.emoji.DiscordEmojiIdDictionary;
+import net.teamfruit.emojicord.emoji.EmojiId;
+import net.teamfruit.emojicord.emoji.StandardEmojiIdDictionary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * Building the standard dictionary after the endpoint lists arrive, and the Discord name lookups done while parsing.
+ */
+@State(Scope.Thread)
+public class EmojiDictionaryBenchmark {
+	private BenchmarkCorpus corpus;
+	private String[] names;
+	private int next;
+
+	@Setup
+	public void setup(final EmojiDictionaryState state) {
+		this.corpus = state.corpus;
+		// Plain names, names told apart by their ordinal, and names nobody registered
+		final List<String> discordNames = this.corpus.discordNames;
+		this.names = new String[1024];
+		for (int i = 0; i<this.names.length; i++) {
+			final String name = discordNames.get(i*31%discordNames.size());
+			this.names[i] = i%4==0 ? name+"~"+i%3 : i%4==1 ? name+"_missing" : name;
+		}
+	}
+
+	@Benchmark
+	public StandardEmojiIdDictionary buildStandard() {
+		return StandardEmojiIdDictionary.fromLists(this.corpus.standardLists);
+	}
+
+	@Benchmark
+	public EmojiId discordGet() {
+		return DiscordEmojiIdDictionary.instance.get(this.names[this.next++&this.names.length-1]);
+	}
+}
@@ -0,0 +1,44 @@
+package net.teamfruit.emojicord.benchmark;
+
+import net.teamfruit.emojicord.emoji.DiscordEmojiIdDictionary;
+import net.teamfruit.emojicord.emoji.Models.EmojiDiscordList;
+import net.teamfruit.emojicord.emoji.StandardEmojiIdDictionary;
+import net.teamfruit.emojicord.util.DataUtils;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Installs the standard and Discord dictionaries of the {@link BenchmarkCorpus}, the way the mod does on startup.
+ * The Discord lists are written out as dictionary files and loaded through {@link DiscordEmojiIdDictionary#loadAll()}.
+ */
+@State(Scope.Benchmark)
+public class EmojiDictionaryState {
+	public BenchmarkCorpus corpus;
+
+	private File dictDir;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		this.corpus = new BenchmarkCorpus();
+		StandardEmojiIdDictionary.instance = StandardEmojiIdDictionary.fromLists(this.corpus.standardLists);
+
+		this.dictDir = Files.createTempDirectory("emojicord-dictionary").toFile();
+		for (final EmojiDiscordList list : this.corpus.discordLists)
+			DataUtils.saveFile(new File(this.dictDir, list.id+".json"), EmojiDiscordList.class, list, "Benchmark Dictionary");
+		DiscordEmojiIdDictionary.instance.init(this.dictDir);
+		DiscordEmojiIdDictionary.instance.loadAll().join();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		FileUtils.deleteQuietly(this.dictDir);
+	}
+}
@@ -0,0 +1,39 @@
+package net.teamfruit.emojicord.benchmark;
+
+import net.teamfruit.emojicord.emoji.EmojiSuggestionIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * The search behind chat suggestions, for the prefixes typed after a colon.
+ * SuggestionChat itself needs a chat screen, so this calls the index it queries with the same limit.
+ */
+@State(Scope.Thread)
+public class EmojiSuggestionBenchmark {
+	public static final int SUGGESTION_LIMIT = 100;
+
+	private String[] prefixes;
+	private int next;
+
+	@Setup
+	public void setup(final EmojiDictionaryState state) {
+		final List<String> standardNames = state.corpus.standardNames;
+		final List<String> discordNames = state.corpus.discordNames;
+		this.prefixes = new String[1024];
+		for (int i = 0; i<this.prefixes.length; i++) {
+			// Suggestions start after two characters, and most lookups are for the first few
+			final String name = i%2==0 ? standardNames.get(i*7%standardNames.size()) : discordNames.get(i*13%discordNames.size());
+			this.prefixes[i] = name.substring(0, Math.min(name.length(), 2+i%4));
+		}
+		EmojiSuggestionIndex.get();
+	}
+
+	@Benchmark
+	public List<String> search() {
+		return EmojiSuggestionIndex.get().search(this.prefixes[this.next++&this.prefixes.length-1], SUGGESTION_LIMIT);
+	}
+}
@@ -0,0 +1,44 @@
+package net.teamfruit.emojicord.benchmark;
+
+import net.teamfruit.emojicord.emoji.EmojiText;
+import net.teamfruit.emojicord.emoji.EmojiText.ParseFlag;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.EnumSet;
+
+/**
+ * {@link EmojiText#create} over the chat corpus, one line per call, for every combination of {@link ParseFlag}s.
+ */
+@State(Scope.Thread)
+public class EmojiTextBenchmark {
+	/**
+	 * Bit n set means {@code ParseFlag.values()[n]}: 1 ESCAPE, 2 ENCODE, 4 ENCODE_ALIAS, 8 ENCODE_UTF, 16 PARSE.
+	 * 29 is what chat rendering uses, 31 with UTF emojis.
+	 */
+	@Param({ "0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12", "13", "14", "15",
+			"16", "17", "18", "19", "20", "21", "22", "23", "24", "25", "26", "27", "28", "29", "30", "31" })
+	public int flagMask;
+
+	private EnumSet<ParseFlag> flags;
+	private String[] messages;
+	private int next;
+
+	@Setup
+	public void setup(final EmojiDictionaryState state) {
+		this.flags = EnumSet.noneOf(ParseFlag.class);
+		for (final ParseFlag flag : ParseFlag.values())
+			if ((this.flagMask&1<<flag.ordinal())!=0)
+				this.flags.add(flag);
+		this.messages = state.corpus.messages;
+	}
+
+	@Benchmark
+	public EmojiText create() {
+		final String text = this.messages[this.next++&BenchmarkCorpus.MESSAGE_COUNT-1];
+		return EmojiText.create(text, this.flags);
+	}
+}
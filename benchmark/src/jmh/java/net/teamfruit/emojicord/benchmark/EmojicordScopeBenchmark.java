@@ -0,0 +1,32 @@
+package net.teamfruit.emojicord.benchmark;
+
+import net.teamfruit.emojicord.EmojicordScope;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The scope checks run for every string drawn, and the enter/exit pair injected around chat rendering.
+ */
+@State(Scope.Thread)
+public class EmojicordScopeBenchmark {
+	@Benchmark
+	public boolean checkIsInput() {
+		return EmojicordScope.instance.checkIsInput();
+	}
+
+	@Benchmark
+	public boolean checkIsMessage() {
+		return EmojicordScope.instance.checkIsMessage();
+	}
+
+	@Benchmark
+	public boolean enterExit() {
+		EmojicordScope.enter(EmojicordScope.SCOPE_MESSAGE);
+		try {
+			return EmojicordScope.instance.checkIsMessage();
+		} finally {
+			EmojicordScope.exit(EmojicordScope.SCOPE_MESSAGE);
+		}
+	}
+}
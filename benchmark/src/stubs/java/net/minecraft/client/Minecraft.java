@@ -0,0 +1,23 @@
+package net.minecraft.client;
+
+import net.minecraft.client.renderer.texture.TextureManager;
+
+import java.io.File;
+import java.net.Proxy;
+
+/**
+ * Stub of the 1.12.2 client, holding only what the emoji classes touch.
+ */
+public class Minecraft {
+	public final File mcDataDir = new File(System.getProperty("java.io.tmpdir"), "emojicord-benchmark");
+
+	private final TextureManager textureManager = new TextureManager();
+
+	public Proxy getProxy() {
+		return Proxy.NO_PROXY;
+	}
+
+	public TextureManager getTextureManager() {
+		return this.textureManager;
+	}
+}
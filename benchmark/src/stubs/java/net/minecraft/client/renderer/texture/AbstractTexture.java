@@ -0,0 +1,13 @@
+package net.minecraft.client.renderer.texture;
+
+import net.minecraft.client.resources.IResourceManager;
+
+import java.io.IOException;
+
+public abstract class AbstractTexture {
+	public int getGlTextureId() {
+		return 0;
+	}
+
+	public abstract void loadTexture(IResourceManager resourceManager) throws IOException;
+}
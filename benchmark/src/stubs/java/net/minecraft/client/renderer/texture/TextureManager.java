@@ -0,0 +1,9 @@
+package net.minecraft.client.renderer.texture;
+
+import net.minecraft.util.ResourceLocation;
+
+public class TextureManager {
+	public boolean loadTexture(final ResourceLocation location, final AbstractTexture texture) {
+		return true;
+	}
+}
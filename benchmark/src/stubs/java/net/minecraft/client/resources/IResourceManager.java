@@ -0,0 +1,4 @@
+package net.minecraft.client.resources;
+
+public interface IResourceManager {
+}
@@ -0,0 +1,20 @@
+package net.minecraft.util;
+
+public class ResourceLocation {
+	private final String namespace;
+	private final String path;
+
+	public ResourceLocation(final String namespace, final String path) {
+		this.namespace = namespace;
+		this.path = path;
+	}
+
+	public ResourceLocation(final String location) {
+		this("minecraft", location);
+	}
+
+	@Override
+	public String toString() {
+		return this.namespace+":"+this.path;
+	}
+}
@@ -0,0 +1,61 @@
+package net.teamfruit.emojicord.compat;
+
+import net.minecraft.client.Minecraft;
+
+import javax.annotation.Nonnull;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Stands in for the per-version Compat without a GL context: texture calls do nothing.
+ */
+public class Compat {
+	private static final Minecraft minecraft = new Minecraft();
+
+	public static @Nonnull Minecraft getMinecraft() {
+		return minecraft;
+	}
+
+	public static int getGuiScaleFactor() {
+		return 2;
+	}
+
+	public static class CompatI18n {
+		public static String format(final String format, final Object... args) {
+			return String.format(format, args);
+		}
+
+		public static boolean hasKey(final String key) {
+			return false;
+		}
+	}
+
+	public static class CompatTexture {
+		public static IntBuffer toPixels(final BufferedImage bufferedimage) {
+			BufferedImage image = bufferedimage;
+			if (image.getType()!=BufferedImage.TYPE_INT_ARGB) {
+				image = new BufferedImage(bufferedimage.getWidth(), bufferedimage.getHeight(), BufferedImage.TYPE_INT_ARGB);
+				final Graphics2D g = image.createGraphics();
+				try {
+					g.drawImage(bufferedimage, 0, 0, null);
+				} finally {
+					g.dispose();
+				}
+			}
+			final int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+			final IntBuffer pixels = ByteBuffer.allocateDirect(data.length*4).order(ByteOrder.nativeOrder()).asIntBuffer();
+			pixels.put(data).flip();
+			return pixels;
+		}
+
+		public static void prepareTexture(final int textureId, final int width, final int height) {
+		}
+
+		public static void uploadTextureSub(final int textureId, final IntBuffer pixels, final int xOffset, final int yOffset, final int width, final int height) {
+		}
+	}
+}
@@ -46,13 +46,10 @@ public class ClientProxy extends CommonProxy {
 		DiscordEmojiIdDictionary.instance.init(Locations.instance.getDictionaryDirectory());
 		DiscordEmojiIdDictionary.instance.loadAll();
 
-		EmojicordScope.instance.loadAll();
-
-		if (Endpoint.loadGateway()) {
-			Endpoint.loadStandardEmojis();
-			Endpoint.loadStandardPicker();
-			Analytics.instance.startAnalytics();
-		}
+		Endpoint.loadAll().thenAccept(loaded -> {
+			if (loaded)
+				Analytics.instance.startAnalytics();
+		});
 
 		eventHandler = new EventHandler();
 		eventHandler.registerHandler();
@@ -8,10 +8,15 @@ public class EmojicordConfig {
 	public static final Suggest SUGGEST = new Suggest(BUILDER);
 	public static final Picker PICKER = new Picker(BUILDER);
 	public static final Update UPDATE = new Update(BUILDER);
+	public static final Cache CACHE = new Cache(BUILDER);
 	public static final CompatConfigSpec spec = BUILDER.build();
 
 	public static class Render {
 		public final CompatConfigSpec.ConfigValue<Boolean> renderEnabled;
+		public final CompatConfigSpec.ConfigValue<Integer> uploadBudget;
+		public final CompatConfigSpec.ConfigValue<Integer> uploadTime;
+		public final CompatConfigSpec.ConfigValue<Integer> textureBudget;
+		public final CompatConfigSpec.ConfigValue<Boolean> metricsOverlay;
 
 		public Render(final CompatConfigSpec.Builder builder) {
 			builder
@@ -22,6 +27,22 @@ public class EmojicordConfig {
 					.comment("Enables/Disables emoji rendering")
 					.translation("emojicord.config.render.enabled")
 					.define("Enabled", true);
+			this.uploadBudget = builder
+					.comment("Maximum size of emoji frames uploaded to the GPU per rendered frame, in kilobytes")
+					.translation("emojicord.config.render.uploadbudget")
+					.define("UploadBudget", 512);
+			this.uploadTime = builder
+					.comment("Maximum time spent uploading emoji frames per rendered frame, in milliseconds")
+					.translation("emojicord.config.render.uploadtime")
+					.define("UploadTime", 2);
+			this.textureBudget = builder
+					.comment("Maximum size of emoji textures kept on the GPU, in megabytes")
+					.translation("emojicord.config.render.texturebudget")
+					.define("TextureBudget", 64);
+			this.metricsOverlay = builder
+					.comment("Shows emoji timings and counters on the chat screen, click them to save metrics.json")
+					.translation("emojicord.config.render.metricsoverlay")
+					.define("MetricsOverlay", false);
 			builder.pop();
 		}
 	}
@@ -78,4 +99,20 @@ public class EmojicordConfig {
 			builder.pop();
 		}
 	}
+
+	public static class Cache {
+		public final CompatConfigSpec.ConfigValue<Integer> diskCacheSize;
+
+		public Cache(final CompatConfigSpec.Builder builder) {
+			builder
+					.comment("Emoji Cache Settings")
+					.translation("emojicord.config.cache")
+					.push("Cache");
+			this.diskCacheSize = builder
+					.comment("Maximum size of downloaded emoji images kept on disk, in megabytes (at least 16)")
+					.translation("emojicord.config.cache.disksize")
+					.define("DiskCacheSize", 128);
+			builder.pop();
+		}
+	}
 }
\ No newline at end of file
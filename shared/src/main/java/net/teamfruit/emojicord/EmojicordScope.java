@@ -4,30 +4,27 @@ import java.io.IOException;
 import java.net.URL;
 import java.util.Enumeration;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Stream;
 
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
 
 import net.teamfruit.emojicord.util.DataUtils;
 
 public class EmojicordScope {
 	public static EmojicordScope instance = new EmojicordScope();
 
+	public static final int SCOPE_INPUT = 1<<0;
+	public static final int SCOPE_MESSAGE = 1<<1;
+
 	public static class EmojicordScopeModel {
 		public List<String> input;
 		public List<String> message;
 	}
 
-	public Set<String> input = Sets.newHashSet();
-	public Set<String> message = Sets.newHashSet();
-
-	public void loadAll() {
+	public static EmojicordScopeModel loadModel(final ClassLoader classLoader) {
 		final List<String> input = Lists.newArrayList();
 		final List<String> message = Lists.newArrayList();
 		try {
-			final Enumeration<URL> ress = getClass().getClassLoader().getResources("META-INF/"+Reference.MODID+"/scope.json");
+			final Enumeration<URL> ress = classLoader.getResources("META-INF/"+Reference.MODID+"/scope.json");
 			while (ress.hasMoreElements()) {
 				final URL url = ress.nextElement();
 				try {
@@ -45,19 +42,42 @@ public class EmojicordScope {
 		} catch (final IOException e) {
 			Log.log.info("Failed to load Emojicord Scope Config: ", e);
 		}
-		this.input = Sets.newHashSet(input);
-		this.message = Sets.newHashSet(message);
+		final EmojicordScopeModel model = new EmojicordScopeModel();
+		model.input = input;
+		model.message = message;
+		return model;
+	}
+
+	private static class ScopeState {
+		private int input;
+		private int message;
+	}
+
+	private static final ThreadLocal<ScopeState> state = ThreadLocal.withInitial(ScopeState::new);
+
+	@CoreInvoke
+	public static void enter(final int scope) {
+		final ScopeState current = state.get();
+		if ((scope&SCOPE_INPUT)!=0)
+			current.input++;
+		if ((scope&SCOPE_MESSAGE)!=0)
+			current.message++;
+	}
+
+	@CoreInvoke
+	public static void exit(final int scope) {
+		final ScopeState current = state.get();
+		if ((scope&SCOPE_INPUT)!=0&&current.input>0)
+			current.input--;
+		if ((scope&SCOPE_MESSAGE)!=0&&current.message>0)
+			current.message--;
 	}
 
-	public boolean checkIsInput(final StackTraceElement[] stacks) {
-		if (stacks==null)
-			return true;
-		return Stream.of(stacks).map(StackTraceElement::getClassName).anyMatch(this.input::contains);
+	public boolean checkIsInput() {
+		return state.get().input>0;
 	}
 
-	public boolean checkIsMessage(final StackTraceElement[] stacks) {
-		if (stacks==null)
-			return true;
-		return Stream.of(stacks).map(StackTraceElement::getClassName).anyMatch(this.message::contains);
+	public boolean checkIsMessage() {
+		return state.get().message>0;
 	}
 }
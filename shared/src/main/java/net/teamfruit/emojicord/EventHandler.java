@@ -48,19 +48,27 @@ import net.minecraftforge.common.MinecraftForge;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import net.minecraftforge.client.event.GuiScreenEvent;
+import net.teamfruit.emojicord.emoji.EmojiAnimation.EmojiAnimationClock;
+import net.teamfruit.emojicord.emoji.EmojiAtlas;
 import net.teamfruit.emojicord.emoji.EmojiFrequently;
 import net.teamfruit.emojicord.emoji.EmojiText;
+import net.teamfruit.emojicord.emoji.EmojiTextureResidency;
+import net.teamfruit.emojicord.emoji.EmojiUploadQueue;
 import net.teamfruit.emojicord.emoji.PickerItem;
 import net.teamfruit.emojicord.gui.EmojiSelectionChat;
 import net.teamfruit.emojicord.gui.EmojiSettings;
 import net.teamfruit.emojicord.gui.IChatOverlay;
+import net.teamfruit.emojicord.gui.MetricsOverlay;
 import net.teamfruit.emojicord.gui.SuggestionChat;
+import net.teamfruit.emojicord.util.Metrics;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -86,11 +94,14 @@ public class EventHandler {
 	private final List<Function< #if MC_12_LATER ChatScreen #else GuiChat #endif , IChatOverlay>> overlayFactories = Arrays.asList(
 			EmojiSettings::new,
 			EmojiSelectionChat::new,
-			SuggestionChat::new);
+			SuggestionChat::new,
+			MetricsOverlay::new);
 	private List<IChatOverlay> overlays = Collections.emptyList();
 
 	private WatchService watcher;
 	private AtomicBoolean changed = new AtomicBoolean(false);
+	private final Set<File> changedFiles = ConcurrentHashMap.newKeySet();
+	private AtomicBoolean overflowed = new AtomicBoolean(false);
 
 	public void registerDictionaryWatcher(final File dictDir) {
 		try {
@@ -109,11 +120,14 @@ public class EventHandler {
 						final WatchKey watchKey = this.watcher.take();
 						for (final WatchEvent<?> event : watchKey.pollEvents()) {
 							if (event.kind() == OVERFLOW)
-								continue;
+								this.overflowed.set(true);
+							else
+								this.changedFiles.add(dictDir.toPath().resolve((Path) event.context()).toFile().getAbsoluteFile());
 							this.changed.set(true);
 						}
 						watchKey.reset();
 					} catch (final InterruptedException e) {
+						this.overflowed.set(true);
 						this.changed.set(true);
 					}
 			});
@@ -128,6 +142,19 @@ public class EventHandler {
 			return this.changed.getAndSet(false);
 	}
 
+	/**
+	 * @return the files created, modified or deleted since the last call, or null if events were lost and the whole directory has to be reloaded
+	 */
+	public @Nullable Set<File> takeDictionaryChanges() {
+		if (this.watcher == null || this.overflowed.getAndSet(false)) {
+			this.changedFiles.clear();
+			return null;
+		}
+		final Set<File> files = new HashSet<>(this.changedFiles);
+		this.changedFiles.removeAll(files);
+		return files;
+	}
+
 	@SubscribeEvent
 	public void onChat(final ClientChatEvent event) {
 		final String message = event.getMessage();
@@ -153,6 +180,17 @@ public class EventHandler {
 				overlay.onTick();
 	}
 
+	@SubscribeEvent
+	public void onRenderTick(final TickEvent.RenderTickEvent event) {
+		if (event.phase == TickEvent.Phase.START) {
+			Metrics.instance.endFrame();
+			EmojiAnimationClock.instance.advance();
+			EmojiAtlas.instance.updateVariantSize();
+			EmojiTextureResidency.instance.update();
+			EmojiUploadQueue.instance.drain();
+		}
+	}
+
 	@SubscribeEvent
 	public void onInitGui(final GuiScreenEvent.InitGuiEvent.Post event) {
 		final #if MC_12_LATER Screen #else GuiScreen #endif chatScreen = #if MC_7_LATER event.getGui() #else event.gui #endif ;
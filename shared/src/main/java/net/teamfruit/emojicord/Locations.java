@@ -32,4 +32,8 @@ public class Locations {
 	public File getDictionaryDirectory() {
 		return new File(getEmojicordDirectory(), "dictionary");
 	}
+
+	public File getEndpointDirectory() {
+		return new File(getEmojicordDirectory(), "endpoint");
+	}
 }
@@ -34,15 +34,16 @@ public class EmojicordTransformer extends CompatTransformer #if MC_12_LATER impl
 
 	@Override
 	public ClassNode transform(final ClassNode input, final CompatTransformerVotingContext context) {
+		ClassNode node = input;
 		try {
 			for (final INodeTreeTransformer transformer : this.transformers)
-				if (transformer.getMatcher().test(input))
-					return VisitorHelper.transform(input, transformer, Log.log);
+				if (transformer.getMatcher().test(node))
+					node = VisitorHelper.transform(node, transformer, Log.log);
 		} catch (final Exception e) {
 			throw new RuntimeException("Could not transform: ", e);
 		}
 
-		return input;
+		return node;
 	}
 
 	public static final DeferredTransform intelliInputDeferred = new DeferredTransform(EmojicordTransformer.class.getName(), "com.tsoft_web.IntelliInput.asm.IntelliInputTransformer");
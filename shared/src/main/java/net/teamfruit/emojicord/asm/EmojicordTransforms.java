@@ -1,16 +1,20 @@
 package net.teamfruit.emojicord.asm;
 
+import java.util.stream.Stream;
+
 import net.teamfruit.emojicord.asm.lib.INodeTreeTransformer;
 
 public class EmojicordTransforms {
-    public static final INodeTreeTransformer transformers[] = {
+    public static final INodeTreeTransformer transformers[] = Stream.concat(Stream.of(
             new SendChatMessageTransform(),
             new GuiTextFieldTransform(),
             new FontRendererTransform(),
-            new GuiScreenInputEventTransform(),
-    };
+            new GuiScreenInputEventTransform()
+    ), Stream.of(ScopeMarkerTransform.create())).toArray(INodeTreeTransformer[]::new);
 
     public static String getSimpleClassName(Object object) {
+        if (object instanceof ScopeMarkerTransform)
+            return object.getClass().getSimpleName() + "$" + ((ScopeMarkerTransform) object).getSimpleName();
         return object.getClass().getSimpleName();
     }
 }
@@ -1,7 +1,9 @@
 package net.teamfruit.emojicord.asm;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 #if MC_12_LATER
 import cpw.mods.modlauncher.Environment;
@@ -40,6 +42,7 @@ public class FontRendererTransform implements INodeTreeTransformer {
 		final ASMValidate validator = ASMValidate.create(getSimpleName());
 		validator.test("renderStringAtPos.updateEmojiContext");
 		validator.test("renderStringAtPos.emoji");
+		validator.test("renderStringAtPos.flushEmojis", !CompatVersion.version().newer(CompatBaseVersion.V13));
 		validator.test("renderGlyph.render", CompatVersion.version().newer(CompatBaseVersion.V13));
 		validator.test("getStringWidth.updateEmojiContext");
 		validator.test("getStringWidth.findGlyph", CompatVersion.version().newer(CompatBaseVersion.V13));
@@ -109,6 +112,17 @@ public class FontRendererTransform implements INodeTreeTransformer {
 							validator.check("renderStringAtPos.emoji");
 						}
 					});
+					{
+						/*
+						 invokestatic net.teamfruit.emojicord.emoji.EmojiFontRenderer.flushEmojis() : void
+						 return
+						*/
+						final List<AbstractInsnNode> returns = VisitorHelper.stream(method.instructions).filter(e -> e.getOpcode()==Opcodes.RETURN).collect(Collectors.toList());
+						for (final AbstractInsnNode marker : returns) {
+							method.instructions.insertBefore(marker, new MethodInsnNode(Opcodes.INVOKESTATIC, ClassName.of("net.teamfruit.emojicord.emoji.EmojiFontRenderer").getBytecodeName(), "flushEmojis", DescHelper.toDescMethod(void.class), false));
+							validator.checks("renderStringAtPos.flushEmojis");
+						}
+					}
 				} else {
 					/*
 					 IGlyph iglyph = this.font.findGlyph(c0);
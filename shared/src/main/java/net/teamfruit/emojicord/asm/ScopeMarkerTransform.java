@@ -0,0 +1,117 @@
+package net.teamfruit.emojicord.asm;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+
+import com.google.common.collect.Maps;
+
+import net.teamfruit.emojicord.EmojicordScope;
+import net.teamfruit.emojicord.EmojicordScope.EmojicordScopeModel;
+import net.teamfruit.emojicord.asm.lib.ASMValidate;
+import net.teamfruit.emojicord.asm.lib.ClassName;
+import net.teamfruit.emojicord.asm.lib.DescHelper;
+import net.teamfruit.emojicord.asm.lib.INodeTreeTransformer;
+import net.teamfruit.emojicord.asm.lib.VisitorHelper;
+
+/**
+ * Marks the methods of the classes listed in scope.json with {@link EmojicordScope#enter(int)} and {@link EmojicordScope#exit(int)},
+ * so the renderer can tell whether it is drawing chat input or chat messages without walking the stack.
+ */
+public class ScopeMarkerTransform implements INodeTreeTransformer {
+	private final ClassName className;
+	private final int scope;
+
+	public ScopeMarkerTransform(final ClassName className, final int scope) {
+		this.className = className;
+		this.scope = scope;
+	}
+
+	@Override
+	public ClassName getClassName() {
+		return this.className;
+	}
+
+	@Override
+	public ClassNode apply(final ClassNode node) {
+		final ASMValidate validator = ASMValidate.create(getSimpleName());
+		validator.test("scope");
+
+		for (final MethodNode method : node.methods) {
+			if ((method.access&(Opcodes.ACC_ABSTRACT|Opcodes.ACC_NATIVE))!=0)
+				continue;
+			// The uninitialized this cannot be covered by an exception handler.
+			if ("<init>".equals(method.name)||"<clinit>".equals(method.name))
+				continue;
+
+			/*
+			 0  ldc <scope>
+			 2  invokestatic net.teamfruit.emojicord.EmojicordScope.enter(int) : void
+			    [original code, each return preceded by:]
+			    ldc <scope>
+			    invokestatic net.teamfruit.emojicord.EmojicordScope.exit(int) : void
+			    [catch any:]
+			    ldc <scope>
+			    invokestatic net.teamfruit.emojicord.EmojicordScope.exit(int) : void
+			    athrow
+			*/
+			final List<AbstractInsnNode> markers = VisitorHelper.stream(method.instructions)
+					.filter(e -> e.getOpcode()>=Opcodes.IRETURN&&e.getOpcode()<=Opcodes.RETURN)
+					.collect(Collectors.toList());
+			for (final AbstractInsnNode marker : markers)
+				method.instructions.insertBefore(marker, createInvoke("exit"));
+
+			final LabelNode start = new LabelNode();
+			final LabelNode end = new LabelNode();
+			final LabelNode handler = new LabelNode();
+			{
+				final InsnList insertion = createInvoke("enter");
+				insertion.add(start);
+				method.instructions.insert(insertion);
+			}
+			{
+				final InsnList insertion = new InsnList();
+				insertion.add(end);
+				insertion.add(handler);
+				insertion.add(createInvoke("exit"));
+				insertion.add(new InsnNode(Opcodes.ATHROW));
+				method.instructions.add(insertion);
+			}
+			// Appended last so that the original handlers take precedence.
+			method.tryCatchBlocks.add(new TryCatchBlockNode(start, end, handler, null));
+			method.maxStack = Math.max(method.maxStack+1, 2);
+		}
+		validator.check("scope");
+
+		validator.validate();
+		return node;
+	}
+
+	private InsnList createInvoke(final String name) {
+		final InsnList insertion = new InsnList();
+		insertion.add(new LdcInsnNode(this.scope));
+		insertion.add(new MethodInsnNode(Opcodes.INVOKESTATIC, ClassName.of("net.teamfruit.emojicord.EmojicordScope").getBytecodeName(), name, DescHelper.toDescMethod(void.class, int.class), false));
+		return insertion;
+	}
+
+	public static ScopeMarkerTransform[] create() {
+		final EmojicordScopeModel model = EmojicordScope.loadModel(ScopeMarkerTransform.class.getClassLoader());
+		final Map<String, Integer> scopes = Maps.newLinkedHashMap();
+		model.input.forEach(e -> scopes.merge(e, EmojicordScope.SCOPE_INPUT, (a, b) -> a|b));
+		model.message.forEach(e -> scopes.merge(e, EmojicordScope.SCOPE_MESSAGE, (a, b) -> a|b));
+		return scopes.entrySet().stream()
+				.map(e -> new ScopeMarkerTransform(ClassName.of(e.getKey()), e.getValue()))
+				.toArray(ScopeMarkerTransform[]::new);
+	}
+}
@@ -6,15 +6,22 @@ import net.minecraft.client.renderer.texture.TextureManager;
 import net.minecraft.util.ResourceLocation;
 import net.minecraftforge.common.MinecraftForge;
 import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 import java.util.Collections;
 import java.util.Map;
+import java.util.Objects;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -55,6 +62,41 @@ public class Compat {
 		#endif
 	}
 
+	#if !MC_12_LATER
+	// Inputs of the last ScaledResolution, so a new one is built only on resize or a settings change
+	private static int guiScaleWidth = -1, guiScaleHeight, guiScaleSetting;
+	private static boolean guiScaleUnicode;
+	private static String guiScaleLanguage;
+	private static int guiScaleFactor = 1;
+	#endif
+
+	/**
+	 * Cheap enough to call every frame. Call it on the render thread.
+	 * @return how many screen pixels one GUI unit currently covers
+	 */
+	public static int getGuiScaleFactor() {
+		final Minecraft mc = getMinecraft();
+		#if MC_12_LATER
+		return (int) Math.ceil(mc. #if MC_14_LATER getMainWindow() #else mainWindow #endif .getGuiScaleFactor());
+		#else
+		// The unicode font, forced or picked by the language, rounds odd scales down
+		if (mc.displayWidth != guiScaleWidth || mc.displayHeight != guiScaleHeight || mc.gameSettings.guiScale != guiScaleSetting
+				|| mc.gameSettings.forceUnicodeFont != guiScaleUnicode || !Objects.equals(mc.gameSettings.language, guiScaleLanguage)) {
+			guiScaleWidth = mc.displayWidth;
+			guiScaleHeight = mc.displayHeight;
+			guiScaleSetting = mc.gameSettings.guiScale;
+			guiScaleUnicode = mc.gameSettings.forceUnicodeFont;
+			guiScaleLanguage = mc.gameSettings.language;
+			#if MC_7_LATER
+			guiScaleFactor = new net.minecraft.client.gui.ScaledResolution(mc).getScaleFactor();
+			#else
+			guiScaleFactor = new net.minecraft.client.gui.ScaledResolution(mc, mc.displayWidth, mc.displayHeight).getScaleFactor();
+			#endif
+		}
+		return guiScaleFactor;
+		#endif
+	}
+
 	public static class CompatI18n {
 		public static String format(final String format, final Object... args) {
 			return net.minecraft.client.resources.I18n.format(format, args);
@@ -98,40 +140,65 @@ public class Compat {
 			#endif
 		}
 
-		public static void uploadTexture(Supplier<Integer> genTextureId, final BufferedImage bufferedimage) throws IOException {
-			final boolean blur = true;
-			final boolean clamp = false;
-
-			#if MC_12_LATER
+		/**
+		 * Copies the pixels of the image into a direct buffer as ARGB ints in native byte order, the layout {@link #uploadTextureSub} expects.
+		 * The raster's backing array is copied in bulk, so no channel is swizzled per pixel. Other image types are converted with one draw first.
+		 */
+		public static IntBuffer toPixels(final BufferedImage bufferedimage) {
 			final int width = bufferedimage.getWidth();
 			final int height = bufferedimage.getHeight();
-			try (
-					NativeImage nativeimage = new NativeImage(NativeImage.PixelFormat.RGBA, width, height, false);
-			) {
-				final int[] pixels = new int[width*height];
-				bufferedimage.getRGB(0, 0, width, height, pixels, 0, width);
-
-				for (int y = 0; y<height; y++)
-					for (int x = 0; x<width; x++) {
-						final int argb = pixels[y*width+x];
-						final int alpha = 0xFF&argb>>24;
-						final int red = 0xFF&argb>>16;
-						final int green = 0xFF&argb>>8;
-						final int blue = 0xFF&argb>>0;
-						final int abgr = alpha<<24|blue<<16|green<<8|red<<0;
-
-						// ABGR
-						nativeimage.setPixelRGBA(x, y, abgr);
-					}
+			BufferedImage image = bufferedimage;
+			if (image.getType()!=BufferedImage.TYPE_INT_ARGB||image.getRaster().getDataBuffer().getSize()!=width*height) {
+				image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+				final Graphics2D g = image.createGraphics();
+				try {
+					g.drawImage(bufferedimage, 0, 0, null);
+				} finally {
+					g.dispose();
+				}
+			}
+			final int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+			final IntBuffer pixels = ByteBuffer.allocateDirect(data.length*4).order(ByteOrder.nativeOrder()).asIntBuffer();
+			pixels.put(data).flip();
+			return pixels;
+		}
 
-				TextureUtil.prepareImage(genTextureId.get(), 0, nativeimage.getWidth(), nativeimage.getHeight());
-				nativeimage.uploadTextureSub(0, 0, 0, 0, 0, nativeimage.getWidth(), nativeimage.getHeight(), blur, clamp, false #if MC_14_LATER , true #endif );
+		public static void uploadTexture(Supplier<Integer> genTextureId, final BufferedImage bufferedimage) throws IOException {
+			#if MC_12_LATER
+			if (bufferedimage != null) {
+				final int textureId = genTextureId.get();
+				prepareTexture(textureId, bufferedimage.getWidth(), bufferedimage.getHeight());
+				uploadTextureSub(textureId, toPixels(bufferedimage), 0, 0, bufferedimage.getWidth(), bufferedimage.getHeight());
 			}
 			#else
+			final boolean blur = true;
+			final boolean clamp = false;
+
 			if (bufferedimage != null)
 				TextureUtil.uploadTextureImageAllocate(genTextureId.get(), bufferedimage, blur, clamp);
 			#endif
 		}
+
+		public static void prepareTexture(final int textureId, final int width, final int height) {
+			#if MC_12_LATER
+			TextureUtil.prepareImage(textureId, 0, width, height);
+			#else
+			TextureUtil.allocateTexture(textureId, width, height);
+			#endif
+		}
+
+		/**
+		 * Uploads ARGB pixels, one int each in native byte order, straight from the buffer without an intermediate image.
+		 */
+		public static void uploadTextureSub(final int textureId, final IntBuffer pixels, final int xOffset, final int yOffset, final int width, final int height) {
+			OpenGL.glBindTexture(GL11.GL_TEXTURE_2D, textureId);
+			GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR);
+			GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
+			GL11.glPixelStorei(GL11.GL_UNPACK_ROW_LENGTH, 0);
+			GL11.glPixelStorei(GL11.GL_UNPACK_SKIP_PIXELS, 0);
+			GL11.glPixelStorei(GL11.GL_UNPACK_SKIP_ROWS, 0);
+			GL11.glTexSubImage2D(GL11.GL_TEXTURE_2D, 0, xOffset, yOffset, width, height, GL12.GL_BGRA, GL12.GL_UNSIGNED_INT_8_8_8_8_REV, pixels);
+		}
 	}
 
 	public static class CompatBufferBuilder {
@@ -1,203 +1,347 @@
 package net.teamfruit.emojicord.emoji;
 
 import java.io.File;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
 
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimaps;
+import com.google.common.collect.Table;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import net.teamfruit.emojicord.Log;
+import net.teamfruit.emojicord.Reference;
 import net.teamfruit.emojicord.emoji.Models.EmojiDiscord;
 import net.teamfruit.emojicord.emoji.Models.EmojiDiscordGroup;
 import net.teamfruit.emojicord.emoji.Models.EmojiDiscordList;
 import net.teamfruit.emojicord.util.DataUtils;
+import net.teamfruit.emojicord.util.Metrics;
 
+/**
+ * Readers get an immutable {@link Snapshot}, which reloads replace with a single write.
+ * Parsing and every index derived from the dictionary are built on one background thread, so readers never lock or see a half-built dictionary.
+ */
 public class DiscordEmojiIdDictionary {
 	public static final DiscordEmojiIdDictionary instance = new DiscordEmojiIdDictionary();
 
-	public final ListMultimap<String, EmojiId> dictionary = Multimaps.newListMultimap(Maps.newHashMap(),
-			() -> Lists.newArrayList());
-	public final List<EmojiDiscordList> groups = Lists.newArrayList();
-	public final List<PickerGroup> pickerGroups = Lists.newArrayList();
+	private final Metrics.Histogram reloadTime = Metrics.instance.timer("dictionary.reload");
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat(Reference.MODID+"-dictionary-%d").build());
+
+	/**
+	 * Parsed lists by file, sorted by path so emojis sharing a name keep their ordinals across reloads.
+	 * Only touched by the dictionary thread.
+	 */
+	private final TreeMap<File, EmojiDiscordList> lists = new TreeMap<>();
+	private volatile Snapshot snapshot = new Snapshot(ImmutableListMultimap.of(), ImmutableList.of(), ImmutableList.of(), 0, StandardEmojiIdDictionary.instance);
 
 	private File dictDir;
 
-	public EmojiId get(final String name) {
-		final String str = StringUtils.substringBefore(name, "~"); // not substringBeforeLast
-		final Optional<EmojiId> result = this.dictionary.get(str).stream().filter(e -> e.node.getUniqueName(str).equals(name)).findFirst();
-		return result.orElse(null);
-	}
-
-	public Map<String, EmojiId> get() {
-		final Map<String, EmojiId> dict = Maps.newHashMap();
-		for (final Entry<String, List<EmojiId>> entry : Multimaps.asMap(this.dictionary).entrySet()) {
-			final String key = entry.getKey();
-			final List<EmojiId> values = entry.getValue();
-			if (!values.isEmpty())
-				dict.put(key, values.get(0));
-			values.stream().filter(e -> e.node.countPrev()>0).forEach(e -> {
-				dict.put(e.node.getUniqueName(key), e);
-			});
+	public static class Snapshot {
+		private final ImmutableListMultimap<String, EmojiId> dictionary;
+		private final ImmutableList<EmojiDiscordList> groups;
+		private final ImmutableList<Pair<String, ImmutableList<Registration>>> registrations;
+		private final int version;
+		private final UniqueNames names;
+
+		private Snapshot(final ImmutableListMultimap<String, EmojiId> dictionary, final ImmutableList<EmojiDiscordList> groups, final ImmutableList<Pair<String, ImmutableList<Registration>>> registrations, final int version, final StandardEmojiIdDictionary standard) {
+			this.dictionary = dictionary;
+			this.groups = groups;
+			this.registrations = registrations;
+			this.version = version;
+			this.names = new UniqueNames(this, standard);
 		}
-		return dict;
-	}
-
-	public void register(final String name, final EmojiId id) {
-		final List<EmojiId> list = this.dictionary.get(name);
-		if (!list.isEmpty()) {
-			final EmojiId last = list.get(list.size()-1);
-			id.node.linkPrev(last.node);
-		} else {
-			final EmojiId stdId = StandardEmojiIdDictionary.instance.nameDictionary.get(name);
-			if (stdId!=null)
-				id.node.linkPrev(stdId.node);
+
+		/**
+		 * @return the same lists with names resolved against another standard emoji list
+		 */
+		private Snapshot withStandard(final StandardEmojiIdDictionary standard) {
+			return new Snapshot(this.dictionary, this.groups, this.registrations, this.version+1, standard);
+		}
+
+		public EmojiId get(final String name) {
+			return this.names.uniqueNames.get(name);
+		}
+
+		public @Nonnull Map<String, EmojiId> get() {
+			return this.names.names;
+		}
+
+		public @Nonnull List<EmojiDiscordList> getGroups() {
+			return this.groups;
+		}
+
+		public @Nonnull List<PickerGroup> getPickerGroups() {
+			return this.names.pickerGroups;
+		}
+
+		public int getVersion() {
+			return this.version;
 		}
-		list.add(id);
 	}
 
-	public void clear() {
-		this.dictionary.clear();
-		this.groups.clear();
-		this.pickerGroups.clear();
+	/**
+	 * An emoji as listed in a group, with its position among the emojis registered under the same name
+	 */
+	private static class Registration {
+		private final String name;
+		private final EmojiId id;
+		private final int index;
+
+		private Registration(final String name, final EmojiId id, final int index) {
+			this.name = name;
+			this.id = id;
+			this.index = index;
+		}
 	}
 
-	public void init(final File dictDir) {
-		this.dictDir = dictDir;
+	/**
+	 * Emojis sharing a name are told apart by their registration order, counting a standard emoji of the same name first.
+	 * The ordinals are resolved once per dictionary and standard emoji list, so lookups are a single hash lookup.
+	 */
+	private static class UniqueNames {
+		private final StandardEmojiIdDictionary standard;
+		private final ImmutableMap<String, EmojiId> uniqueNames;
+		/**
+		 * The unique names, plus every name for its first emoji
+		 */
+		private final ImmutableMap<String, EmojiId> names;
+		private final ImmutableList<PickerGroup> pickerGroups;
+
+		private UniqueNames(final Snapshot snapshot, final StandardEmojiIdDictionary standard) {
+			this.standard = standard;
+			final Map<String, EmojiId> uniqueNames = Maps.newHashMap();
+			for (final Entry<String, List<EmojiId>> entry : Multimaps.asMap(snapshot.dictionary).entrySet()) {
+				final String name = entry.getKey();
+				final List<EmojiId> ids = entry.getValue();
+				for (int i = 0; i<ids.size(); i++)
+					uniqueNames.put(getUniqueName(name, i), ids.get(i));
+			}
+			final Map<String, EmojiId> names = Maps.newHashMap(uniqueNames);
+			for (final Entry<String, List<EmojiId>> entry : Multimaps.asMap(snapshot.dictionary).entrySet())
+				names.putIfAbsent(entry.getKey(), entry.getValue().get(0));
+			this.uniqueNames = ImmutableMap.copyOf(uniqueNames);
+			this.names = ImmutableMap.copyOf(names);
+
+			final ImmutableList.Builder<PickerGroup> pickerGroups = ImmutableList.builder();
+			for (final Pair<String, ImmutableList<Registration>> group : snapshot.registrations) {
+				final List<PickerItem> pickerItems = Lists.newArrayList();
+				for (final Registration registration : group.getValue()) {
+					final String uid = getUniqueName(registration.name, registration.index);
+					pickerItems.add(new PickerItem(":"+uid+":", ":"+uid+":", Lists.newArrayList(uid), registration.id));
+				}
+				pickerGroups.add(new PickerGroup(group.getKey(), pickerItems));
+			}
+			this.pickerGroups = pickerGroups.build();
+		}
+
+		private String getUniqueName(final String name, final int index) {
+			final int ordinal = index+(this.standard.nameDictionary.containsKey(name) ? 1 : 0);
+			if (ordinal>0)
+				return name+"~"+ordinal;
+			return name;
+		}
 	}
 
-	public File getDictionaryDirectory() {
-		return this.dictDir;
+	/**
+	 * @return the current dictionary, for readers that need several lookups to agree with each other
+	 */
+	public @Nonnull Snapshot getSnapshot() {
+		return this.snapshot;
 	}
 
-	public void loadAll() {
-		if (this.dictDir!=null) {
-			clear();
-			new EmojiDictionaryLoader(this).loadAll(this.dictDir);
-		}
+	public EmojiId get(final String name) {
+		return this.snapshot.get(name);
 	}
 
-	public static class EmojiDictionaryLoader {
-		private final DiscordEmojiIdDictionary dictionary;
+	public @Nonnull Map<String, EmojiId> get() {
+		return this.snapshot.get();
+	}
 
-		public EmojiDictionaryLoader(final DiscordEmojiIdDictionary dictionary) {
-			this.dictionary = dictionary;
-		}
+	public @Nonnull List<EmojiDiscordList> getGroups() {
+		return this.snapshot.getGroups();
+	}
 
-		public void loadAll(final File dictDir) {
-			final File groupsDir = dictDir;
-			//final File groupsDir = new File(dictDir, "mappings");
-			//final File manifestFile = new File(dictDir, "indexes.json");
+	/**
+	 * @return the groups of the picker, a new list whenever the dictionary or the standard emojis change
+	 */
+	public @Nonnull List<PickerGroup> getPickerGroups() {
+		return this.snapshot.getPickerGroups();
+	}
 
-			groupsDir.mkdirs();
+	/**
+	 * @return a counter bumped on every swap, for caches derived from this dictionary
+	 */
+	public int getVersion() {
+		return this.snapshot.getVersion();
+	}
 
-			final List<EmojiDiscordList> lists = Lists.newArrayList();
-			for (final File dictFile : FileUtils.listFiles(groupsDir, new String[] { "json" }, true)) {
-				final EmojiDiscordList emojiList = DataUtils.loadFile(dictFile, EmojiDiscordList.class,
-						"Discord Emoji Dictionary");
-				if (emojiList!=null)
-					lists.add(emojiList);
+	public CompletableFuture<Void> clear() {
+		return submit(() -> {
+			this.lists.clear();
+			publish();
+		});
+	}
+
+	public void init(final File dictDir) {
+		this.dictDir = dictDir.getAbsoluteFile();
+	}
+
+	public File getDictionaryDirectory() {
+		return this.dictDir;
+	}
+
+	/**
+	 * Re-parses every list in the dictionary directory.
+	 */
+	public CompletableFuture<Void> loadAll() {
+		return submit(() -> {
+			if (this.dictDir!=null) {
+				this.dictDir.mkdirs();
+				this.lists.clear();
+				this.lists.putAll(parse(FileUtils.listFiles(this.dictDir, new String[] { "json" }, true)));
+				publish();
 			}
+		});
+	}
 
-			/*
-			final EmojiDiscordIndexFolder listIndex = DataUtils.loadFile(manifestFile, EmojiDiscordIndexFolder.class, null);
-			Set<Set<String>> listIndexSample = null;
-			if (listIndex!=null)
-				try {
-					final Map<String, Integer> listMap = IntStream.range(0, listIndex.lists.size())
-							.boxed()
-							.collect(Collectors.toMap(e -> listIndex.lists.get(e).id, Function.identity()));
-					Collections.sort(lists, (a, b) -> {
-						final Integer ia = listMap.get(a.id);
-						final Integer ib = listMap.get(b.id);
-						if (ia==null&&ib==null)
-							return 0;
-						if (ia==null)
-							return 1;
-						if (ib==null)
-							return -1;
-						return ib-ia;
-					});
-			
-					for (final EmojiDiscordList list : lists) {
-						final List<EmojiDiscordGroup> groupIndex = list.groups;
-						final Map<String, Integer> groupMap = IntStream.range(0, groupIndex.size())
-								.boxed()
-								.collect(Collectors.toMap(e -> groupIndex.get(e).id, Function.identity()));
-						Collections.sort(groupIndex, (a, b) -> {
-							final Integer ia = groupMap.get(a.id);
-							final Integer ib = groupMap.get(b.id);
-							if (ia==null&&ib==null)
-								return 0;
-							if (ia==null)
-								return 1;
-							if (ib==null)
-								return -1;
-							return ib-ia;
-						});
-					}
-			
-					listIndexSample = listIndex.lists.stream().map(
-							e -> e.groups.stream().map(f -> f.id).collect(Collectors.toSet())).collect(Collectors.toSet());
-				} catch (final NullPointerException e) {
-					Log.log.error("Manifest File is corrupted. ignored : ", e);
-				}
-			
-			boolean updated = false;
-			if (listIndexSample==null)
-				updated = true;
-			else {
-				final Set<Set<String>> listsSample = lists.stream().map(
-						e -> e.groups.stream().map(f -> f.id).collect(Collectors.toSet())).collect(Collectors.toSet());
-				if (!listsSample.equals(listIndexSample))
-					updated = true;
+	/**
+	 * Re-parses only the given files, and the lists under the given directories, leaving every other list as parsed before.
+	 * @param changed files created, modified or deleted in the dictionary directory, or null if they are unknown and everything has to be reloaded
+	 */
+	public CompletableFuture<Void> reload(final @Nullable Collection<File> changed) {
+		if (changed==null)
+			return loadAll();
+		return submit(() -> {
+			if (this.dictDir==null||changed.isEmpty())
+				return;
+			final List<File> files = Lists.newArrayList();
+			for (final File file : changed) {
+				final File path = file.getAbsoluteFile();
+				final String prefix = path.getPath()+File.separator;
+				this.lists.keySet().removeIf(e -> e.equals(path)||e.getPath().startsWith(prefix));
+				if (path.isDirectory())
+					files.addAll(FileUtils.listFiles(path, new String[] { "json" }, true));
+				else if (path.isFile()&&path.getName().endsWith(".json"))
+					files.add(path);
 			}
-			if (updated) {
-				final EmojiDiscordIndexFolder ifolder = new EmojiDiscordIndexFolder();
-				ifolder.lists = lists.stream().map(e -> {
-					final EmojiDiscordIndexList ilist = new EmojiDiscordIndexList();
-					ilist.id = e.id;
-					ilist.name = e.name;
-					ilist.groups = e.groups.stream().map(f -> {
-						final EmojiDiscordIndexGroup igroup = new EmojiDiscordIndexGroup();
-						igroup.id = f.id;
-						igroup.name = f.name;
-						return igroup;
-					}).collect(Collectors.toList());
-					return ilist;
-				}).collect(Collectors.toList());
-				DataUtils.saveFile(manifestFile, EmojiDiscordIndexFolder.class, ifolder,
-						"Discord Emoji Dictionary Manifest File");
+			this.lists.putAll(parse(files));
+			publish();
+		});
+	}
+
+	/**
+	 * Resolves the unique names again and rebuilds the search indexes once the standard emojis have been replaced.
+	 * Until then readers keep the names of the previous standard emoji list.
+	 */
+	public CompletableFuture<Void> reindex() {
+		return submit(() -> {
+			final StandardEmojiIdDictionary standard = StandardEmojiIdDictionary.instance;
+			if (this.snapshot.names.standard!=standard)
+				this.snapshot = this.snapshot.withStandard(standard);
+			buildIndexes();
+		});
+	}
+
+	private CompletableFuture<Void> submit(final Runnable task) {
+		return CompletableFuture.runAsync(() -> {
+			final long start = System.nanoTime();
+			try {
+				task.run();
+			} finally {
+				this.reloadTime.record(System.nanoTime()-start);
 			}
-			*/
+		}, this.executor).whenComplete((result, e) -> {
+			if (e!=null)
+				Log.log.warn("Failed to reload Discord Emoji Dictionary: ", e);
+		});
+	}
+
+	private static Map<File, EmojiDiscordList> parse(final Collection<File> files) {
+		return files.parallelStream()
+				.map(file -> Pair.of(file.getAbsoluteFile(), DataUtils.loadFile(file, EmojiDiscordList.class, "Discord Emoji Dictionary")))
+				.filter(e -> e.getValue()!=null)
+				.collect(Collectors.toMap(Pair::getKey, Pair::getValue, (a, b) -> b));
+	}
+
+	/**
+	 * Assembles the parsed lists into a new snapshot.
+	 * Ordinals depend on every list registering a name before it, so they are renumbered here rather than per file.
+	 */
+	private void publish() {
+		final EmojiDictionaryLoader loader = new EmojiDictionaryLoader();
+		loader.load(this.lists.values());
+		EmojiId.DiscordEmojiId.register(loader.dictionary.values());
+		this.snapshot = new Snapshot(ImmutableListMultimap.copyOf(loader.dictionary), ImmutableList.copyOf(loader.groups), loader.registrations.build(), this.snapshot.version+1, StandardEmojiIdDictionary.instance);
+		buildIndexes();
+	}
 
-			final List<PickerGroup> pickerGroups = Lists.newArrayList();
+	/**
+	 * Builds the search indexes for the published snapshot while still off the render thread.
+	 */
+	private static void buildIndexes() {
+		EmojiSuggestionIndex.get();
+		PickerSearchIndex.get();
+	}
+
+	public static class EmojiDictionaryLoader {
+		private final ListMultimap<String, EmojiId> dictionary = Multimaps.newListMultimap(Maps.newHashMap(), () -> Lists.newArrayList());
+		private final List<EmojiDiscordList> groups = Lists.newArrayList();
+		private final ImmutableList.Builder<Pair<String, ImmutableList<Registration>>> registrations = ImmutableList.builder();
+		private final Table<String, EmojiId, Integer> indexes = HashBasedTable.create();
+
+		/**
+		 * @return the position of the emoji among those registered under the name
+		 */
+		private int register(final String name, final EmojiId id) {
+			// Ids compare by value, so the same emoji listed twice is one entry
+			final Integer index = this.indexes.get(name, id);
+			if (index!=null)
+				return index;
+			final List<EmojiId> list = this.dictionary.get(name);
+			this.indexes.put(name, id, list.size());
+			list.add(id);
+			return list.size()-1;
+		}
+
+		public void load(final Collection<EmojiDiscordList> lists) {
 			for (final EmojiDiscordList emojiList : lists)
 				if (emojiList!=null&&emojiList.groups!=null)
 					for (final EmojiDiscordGroup emojiGroup : emojiList.groups)
 						if (emojiGroup!=null&&emojiGroup.emojis!=null) {
-							final List<PickerItem> pickerItems = Lists.newArrayList();
+							final ImmutableList.Builder<Registration> registrations = ImmutableList.builder();
 							for (final EmojiDiscord emoji : emojiGroup.emojis)
 								if (emoji!=null) {
 									final EmojiId id = EmojiId.DiscordEmojiId.fromDecimalId(emoji.id);
-									if (id!=null) {
-										this.dictionary.register(emoji.name, id);
-										final String uid = id.node.getUniqueName(emoji.name);
-										pickerItems.add(new PickerItem(":"+uid+":", ":"+uid+":", Lists.newArrayList(uid), id));
-									}
+									if (id!=null&&emoji.name!=null)
+										registrations.add(new Registration(emoji.name, id, register(emoji.name, id)));
 								}
-							if (!pickerItems.isEmpty())
-								pickerGroups.add(new PickerGroup(emojiGroup.name, pickerItems));
+							final ImmutableList<Registration> built = registrations.build();
+							if (!built.isEmpty())
+								this.registrations.add(Pair.of(emojiGroup.name, built));
 						}
 
-			this.dictionary.groups.addAll(lists);
-			this.dictionary.pickerGroups.addAll(pickerGroups);
+			for (final EmojiDiscordList emojiList : lists)
+				if (emojiList!=null)
+					this.groups.add(emojiList);
 		}
 	}
 }
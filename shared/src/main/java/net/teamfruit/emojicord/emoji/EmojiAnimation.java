@@ -0,0 +1,112 @@
+package net.teamfruit.emojicord.emoji;
+
+import net.teamfruit.emojicord.emoji.EmojiAtlas.EmojiAtlasRegion;
+import org.apache.commons.lang3.tuple.Pair;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Frame timing of an uploaded emoji, driven by the shared {@link EmojiAnimationClock}.
+ * The animation only advances while it is drawn, so one scrolled out of view resumes where it left off.
+ */
+public class EmojiAnimation {
+	/**
+	 * Browsers treat GIF delays this short as unset and fall back to {@link #DEFAULT_DELAY}.
+	 */
+	public static final int MIN_DELAY = 10;
+	public static final int DEFAULT_DELAY = 100;
+
+	private final EmojiAtlasRegion[] frames;
+	private final int[] frameEnds;
+	private final int duration;
+
+	private long elapsed;
+	private long lastFrame = -1;
+	private long lastTime;
+
+	public EmojiAnimation(final @Nonnull List<Pair<Integer, EmojiAtlasRegion>> frames) {
+		this.frames = new EmojiAtlasRegion[frames.size()];
+		this.frameEnds = new int[frames.size()];
+		int end = 0;
+		for (int i = 0; i<this.frames.length; i++) {
+			final Pair<Integer, EmojiAtlasRegion> frame = frames.get(i);
+			final int delay = frame.getLeft();
+			end += delay<=MIN_DELAY ? DEFAULT_DELAY : delay;
+			this.frames[i] = frame.getRight();
+			this.frameEnds[i] = end;
+		}
+		this.duration = end;
+	}
+
+	public boolean isEmpty() {
+		return this.frames.length==0;
+	}
+
+	/**
+	 * @return the first frame whose end lies after {@code time}
+	 */
+	static int findFrame(final int[] frameEnds, final int time) {
+		int low = 0;
+		int high = frameEnds.length-1;
+		while (low<high) {
+			final int mid = (low+high)>>>1;
+			if (frameEnds[mid]<=time)
+				low = mid+1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	public @Nonnull EmojiAtlasRegion getFrame() {
+		if (this.frames.length==1)
+			return this.frames[0];
+		final EmojiAnimationClock clock = EmojiAnimationClock.instance;
+		final long frame = clock.getFrame();
+		if (frame!=this.lastFrame) {
+			// Only count the time since the previous frame if this animation was drawn in it
+			if (frame==this.lastFrame+1)
+				this.elapsed += clock.getTime()-this.lastTime;
+			this.lastFrame = frame;
+			this.lastTime = clock.getTime();
+		}
+		return this.frames[findFrame(this.frameEnds, (int) (this.elapsed%this.duration))];
+	}
+
+	public void forEachFrame(final @Nonnull Consumer<EmojiAtlasRegion> action) {
+		for (final EmojiAtlasRegion frame : this.frames)
+			action.accept(frame);
+	}
+
+	/**
+	 * Render frame counter and time shared by every animation.
+	 * Advanced once at the start of each render frame, so every draw within a frame sees the same time.
+	 */
+	public static class EmojiAnimationClock {
+		public static final EmojiAnimationClock instance = new EmojiAnimationClock();
+
+		private long frame;
+		private long time = System.nanoTime()/1000000L;
+
+		private EmojiAnimationClock() {
+		}
+
+		public void advance() {
+			this.frame++;
+			this.time = System.nanoTime()/1000000L;
+		}
+
+		public long getFrame() {
+			return this.frame;
+		}
+
+		/**
+		 * @return milliseconds, monotonic
+		 */
+		public long getTime() {
+			return this.time;
+		}
+	}
+}
@@ -0,0 +1,284 @@
+package net.teamfruit.emojicord.emoji;
+
+#if MC_12_LATER
+import net.minecraft.client.renderer.texture.Texture;
+import net.minecraft.resources.IResourceManager;
+#else
+import net.minecraft.client.renderer.texture.AbstractTexture;
+import net.minecraft.client.resources.IResourceManager;
+#endif
+
+import com.google.common.collect.Lists;
+import net.minecraft.util.ResourceLocation;
+import net.teamfruit.emojicord.Reference;
+import net.teamfruit.emojicord.compat.Compat;
+import net.teamfruit.emojicord.compat.Compat.CompatTexture;
+
+import javax.annotation.Nonnull;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Packs emoji images and animation frames into a few large textures.
+ * Each page is split into shelves of a single size class, and freed slots are reused by the same class.
+ * All methods except {@link #prepare(BufferedImage, int)} must be called on the render thread.
+ */
+public class EmojiAtlas {
+	public static final int PAGE_SIZE = 1024;
+	public static final int PADDING = 1;
+	public static final int[] SIZE_CLASSES = { 16, 32, 64, 128 };
+	public static final int MAX_SIZE = SIZE_CLASSES[SIZE_CLASSES.length-1];
+	/**
+	 * Emojis are drawn this many GUI units tall.
+	 */
+	public static final int EMOJI_SIZE = 10;
+	/**
+	 * Sizes emojis are decoded at, picked by how many screen pixels an emoji covers.
+	 */
+	public static final int[] VARIANT_SIZES = { 16, 32 };
+
+	public static final EmojiAtlas instance = new EmojiAtlas();
+
+	private final List<EmojiAtlasPage> pages = Lists.newArrayList();
+	private int variantSize = VARIANT_SIZES[0];
+
+	private EmojiAtlas() {
+	}
+
+	public static class EmojiAtlasRegion {
+		public final ResourceLocation location;
+		public final float u0;
+		public final float u1;
+		public final float v0;
+		public final float v1;
+
+		private final EmojiAtlasShelf shelf;
+		private final int slotX;
+
+		private EmojiAtlasRegion(final ResourceLocation location, final float u0, final float u1, final float v0, final float v1, final EmojiAtlasShelf shelf, final int slotX) {
+			this.location = location;
+			this.u0 = u0;
+			this.u1 = u1;
+			this.v0 = v0;
+			this.v1 = v1;
+			this.shelf = shelf;
+			this.slotX = slotX;
+		}
+
+		/**
+		 * A region covering a whole standalone texture, such as the loading and error icons.
+		 */
+		public static EmojiAtlasRegion of(final ResourceLocation location) {
+			return new EmojiAtlasRegion(location, 0, 1, 0, 1, null, 0);
+		}
+	}
+
+	/**
+	 * An image padded to its size class, ready to be copied into a slot.
+	 * Pixels are ARGB ints in native byte order covering the whole slot, including the gutter.
+	 */
+	public static class EmojiAtlasSprite {
+		public final IntBuffer pixels;
+		public final int width;
+		public final int height;
+		public final int sizeClass;
+
+		public EmojiAtlasSprite(final IntBuffer pixels, final int width, final int height, final int sizeClass) {
+			this.pixels = pixels;
+			this.width = width;
+			this.height = height;
+			this.sizeClass = sizeClass;
+		}
+
+		public int getSlotSize() {
+			return this.sizeClass+PADDING*2;
+		}
+	}
+
+	public static boolean isSizeClass(final int sizeClass) {
+		for (final int size : SIZE_CLASSES)
+			if (size==sizeClass)
+				return true;
+		return false;
+	}
+
+	private static int getSizeClass(final int size) {
+		for (final int sizeClass : SIZE_CLASSES)
+			if (size<=sizeClass)
+				return sizeClass;
+		return MAX_SIZE;
+	}
+
+	/**
+	 * @return the variant covering an emoji drawn at the given GUI scale, or the largest one
+	 */
+	public static int getVariantSize(final int guiScale) {
+		for (final int size : VARIANT_SIZES)
+			if (EMOJI_SIZE*guiScale<=size)
+				return size;
+		return VARIANT_SIZES[VARIANT_SIZES.length-1];
+	}
+
+	/**
+	 * Picks up GUI scale changes. Called once per frame.
+	 */
+	public void updateVariantSize() {
+		this.variantSize = getVariantSize(Compat.getGuiScaleFactor());
+	}
+
+	/**
+	 * @return the size emojis should currently be decoded at
+	 */
+	public int getVariantSize() {
+		return this.variantSize;
+	}
+
+	/**
+	 * Scales the image down to fit the given size if needed and surrounds it with a transparent gutter.
+	 * Safe to call from any thread.
+	 * @param maxSize the variant size, at most {@link #MAX_SIZE}
+	 */
+	public static @Nonnull EmojiAtlasSprite prepare(final @Nonnull BufferedImage source, final int maxSize) {
+		final int limit = Math.min(maxSize, MAX_SIZE);
+		int width = Math.max(1, source.getWidth());
+		int height = Math.max(1, source.getHeight());
+		if (width>limit||height>limit) {
+			final float scale = Math.min((float) limit/width, (float) limit/height);
+			width = Math.max(1, Math.round(width*scale));
+			height = Math.max(1, Math.round(height*scale));
+		}
+		final BufferedImage scaled = halve(source, width, height);
+		final int sizeClass = getSizeClass(Math.max(width, height));
+		final int slotSize = sizeClass+PADDING*2;
+		final BufferedImage image = new BufferedImage(slotSize, slotSize, BufferedImage.TYPE_INT_ARGB);
+		final Graphics2D g = image.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.drawImage(scaled, PADDING, PADDING, width, height, null);
+		} finally {
+			g.dispose();
+		}
+		return new EmojiAtlasSprite(CompatTexture.toPixels(image), width, height, sizeClass);
+	}
+
+	/**
+	 * Walks down the mip chain until one more halving would pass the target size.
+	 * A single bilinear step from a large image only samples a few of its pixels and looks noisy.
+	 */
+	private static BufferedImage halve(BufferedImage image, final int width, final int height) {
+		while (image.getWidth()>=width*2&&image.getHeight()>=height*2) {
+			final BufferedImage half = new BufferedImage(image.getWidth()/2, image.getHeight()/2, BufferedImage.TYPE_INT_ARGB);
+			final Graphics2D g = half.createGraphics();
+			try {
+				g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				g.drawImage(image, 0, 0, half.getWidth(), half.getHeight(), null);
+			} finally {
+				g.dispose();
+			}
+			image = half;
+		}
+		return image;
+	}
+
+	public @Nonnull EmojiAtlasRegion upload(final @Nonnull EmojiAtlasSprite sprite) {
+		final EmojiAtlasShelf shelf = findShelf(sprite.sizeClass);
+		final int slotX = shelf.allocate();
+		final EmojiAtlasPage page = shelf.page;
+		CompatTexture.uploadTextureSub(page.getGlTextureId(), sprite.pixels.duplicate(), slotX, shelf.y, shelf.slotSize, shelf.slotSize);
+		final float x = slotX+PADDING;
+		final float y = shelf.y+PADDING;
+		return new EmojiAtlasRegion(page.location,
+				x/PAGE_SIZE, (x+sprite.width)/PAGE_SIZE,
+				y/PAGE_SIZE, (y+sprite.height)/PAGE_SIZE,
+				shelf, slotX);
+	}
+
+	public void free(final EmojiAtlasRegion region) {
+		if (region.shelf!=null)
+			region.shelf.free(region.slotX);
+	}
+
+	private EmojiAtlasShelf findShelf(final int sizeClass) {
+		for (final EmojiAtlasPage page : this.pages)
+			for (final EmojiAtlasShelf shelf : page.shelves)
+				if (shelf.sizeClass==sizeClass&&shelf.hasSpace())
+					return shelf;
+		for (final EmojiAtlasPage page : this.pages) {
+			final EmojiAtlasShelf shelf = page.addShelf(sizeClass);
+			if (shelf!=null)
+				return shelf;
+		}
+		final EmojiAtlasPage page = new EmojiAtlasPage(new ResourceLocation(Reference.MODID, "textures/emojis/atlas/"+this.pages.size()));
+		Compat.getMinecraft().getTextureManager().loadTexture(page.location, page);
+		this.pages.add(page);
+		return page.addShelf(sizeClass);
+	}
+
+	private static class EmojiAtlasShelf {
+		private final EmojiAtlasPage page;
+		private final int y;
+		private final int sizeClass;
+		private final int slotSize;
+		private final Deque<Integer> freeSlots = new ArrayDeque<>();
+		private int nextX;
+
+		private EmojiAtlasShelf(final EmojiAtlasPage page, final int y, final int sizeClass) {
+			this.page = page;
+			this.y = y;
+			this.sizeClass = sizeClass;
+			this.slotSize = sizeClass+PADDING*2;
+		}
+
+		private boolean hasSpace() {
+			return !this.freeSlots.isEmpty()||this.nextX+this.slotSize<=PAGE_SIZE;
+		}
+
+		private int allocate() {
+			if (!this.freeSlots.isEmpty())
+				return this.freeSlots.pop();
+			final int x = this.nextX;
+			this.nextX += this.slotSize;
+			return x;
+		}
+
+		private void free(final int x) {
+			this.freeSlots.push(x);
+		}
+	}
+
+	public static class EmojiAtlasPage extends #if MC_12_LATER Texture #else AbstractTexture #endif {
+		public final ResourceLocation location;
+		private final List<EmojiAtlasShelf> shelves = Lists.newArrayList();
+		private int nextY;
+		private boolean allocated;
+
+		public EmojiAtlasPage(final ResourceLocation location) {
+			this.location = location;
+		}
+
+		private EmojiAtlasShelf addShelf(final int sizeClass) {
+			final int slotSize = sizeClass+PADDING*2;
+			if (this.nextY+slotSize>PAGE_SIZE)
+				return null;
+			final EmojiAtlasShelf shelf = new EmojiAtlasShelf(this, this.nextY, sizeClass);
+			this.nextY += slotSize;
+			this.shelves.add(shelf);
+			return shelf;
+		}
+
+		@Override
+		public void loadTexture(final IResourceManager resourceManager) throws IOException {
+			// Resource reloads call this again; the packed contents must survive them
+			if (!this.allocated) {
+				CompatTexture.prepareTexture(getGlTextureId(), PAGE_SIZE, PAGE_SIZE);
+				this.allocated = true;
+			}
+		}
+	}
+}
@@ -0,0 +1,340 @@
+package net.teamfruit.emojicord.emoji;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.BaseEncoding;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.teamfruit.emojicord.EmojicordConfig;
+import net.teamfruit.emojicord.Locations;
+import net.teamfruit.emojicord.Log;
+import net.teamfruit.emojicord.emoji.Models.EmojiCacheEntry;
+import net.teamfruit.emojicord.emoji.Models.EmojiCacheIndex;
+import net.teamfruit.emojicord.util.DataUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpStatus;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Index of the downloaded emoji images under {@link Locations#getCacheDirectory()}.
+ * Tracks the size and hash of each file so truncated downloads are detected, remembers failures with an exponential backoff,
+ * and evicts the least recently used files once the configured disk budget is exceeded.
+ * Frames stored by {@link EmojiFrameCache} are counted against the same budget and evicted along with their source.
+ * Entries are changed only while holding the lock of this cache, since downloads finish on worker threads.
+ */
+public class EmojiCache {
+	public static final long REVALIDATE_AFTER = TimeUnit.DAYS.toMillis(7);
+	public static final long RETRY_BASE = TimeUnit.MINUTES.toMillis(1);
+	public static final long RETRY_BASE_NOT_FOUND = TimeUnit.HOURS.toMillis(1);
+	public static final long RETRY_MAX = TimeUnit.DAYS.toMillis(1);
+	public static final long SAVE_DELAY_SEC = 5;
+	/**
+	 * Smallest disk budget in megabytes, so a newly downloaded emoji always fits next to the one being drawn
+	 */
+	public static final int MIN_BUDGET = 16;
+
+	public static final EmojiCache instance = new EmojiCache();
+
+	private final File directory = Locations.instance.getCacheDirectory();
+	private final File indexFile = new File(this.directory, "index.json");
+
+	private final Map<String, EmojiCacheEntry> entries = new ConcurrentHashMap<>();
+	private final AtomicBoolean saveScheduled = new AtomicBoolean();
+	private final ScheduledExecutorService saver = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactoryBuilder().setNameFormat("emojicord-cache-%d").setDaemon(true).build());
+
+	private EmojiCache() {
+		final EmojiCacheIndex index = DataUtils.loadFileIfExists(this.indexFile, EmojiCacheIndex.class, "Emoji Cache Index");
+		if (index!=null&&index.entries!=null) {
+			final long now = System.currentTimeMillis();
+			index.entries.forEach((key, entry) -> {
+				if (entry!=null&&!isExpiredFailure(entry, now))
+					this.entries.put(key, entry);
+			});
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			if (this.saveScheduled.get())
+				save();
+		}, "emojicord-cache-shutdown"));
+	}
+
+	private static String getKey(final EmojiId id) {
+		return id.getCacheKey();
+	}
+
+	public @Nonnull File getFile(final @Nonnull EmojiId id) {
+		return id.getCache();
+	}
+
+	public @Nullable EmojiCacheEntry getEntry(final @Nonnull EmojiId id) {
+		return this.entries.get(getKey(id));
+	}
+
+	private static boolean isComplete(final @Nullable EmojiCacheEntry entry, final File file) {
+		return entry!=null&&entry.sha1!=null&&file.isFile()&&file.length()==entry.size;
+	}
+
+	/**
+	 * @return the cached file if a complete download is on disk, or null
+	 */
+	public @Nullable File lookup(final @Nonnull EmojiId id) {
+		final EmojiCacheEntry entry = getEntry(id);
+		final File file = getFile(id);
+		if (!isComplete(entry, file))
+			return null;
+		synchronized (this) {
+			entry.lastAccess = System.currentTimeMillis();
+		}
+		scheduleSave();
+		return file;
+	}
+
+	/**
+	 * @return true while a previous failure is still backing off
+	 */
+	public boolean isBackedOff(final @Nonnull EmojiId id) {
+		final EmojiCacheEntry entry = getEntry(id);
+		return entry!=null&&entry.retryAfter>System.currentTimeMillis();
+	}
+
+	public boolean needsRevalidation(final @Nonnull EmojiId id) {
+		final EmojiCacheEntry entry = getEntry(id);
+		return entry!=null&&(entry.etag!=null||entry.lastModified!=null)
+				&&entry.validated+REVALIDATE_AFTER<System.currentTimeMillis()
+				&&!isBackedOff(id);
+	}
+
+	/**
+	 * Checks data read from the cache against the recorded hash, dropping the entry if it does not match.
+	 */
+	public boolean verify(final @Nonnull EmojiId id, final @Nonnull byte[] data) {
+		final EmojiCacheEntry entry = getEntry(id);
+		if (entry==null||entry.sha1==null)
+			return true;
+		if (entry.size==data.length&&entry.sha1.equals(toHex(newDigest().digest(data))))
+			return true;
+		Log.log.warn("Discarding corrupted emoji cache: "+getKey(id));
+		invalidate(id);
+		return false;
+	}
+
+	public void invalidate(final @Nonnull EmojiId id) {
+		synchronized (this) {
+			this.entries.remove(getKey(id));
+		}
+		FileUtils.deleteQuietly(getFile(id));
+		FileUtils.deleteQuietly(EmojiFrameCache.instance.getFile(id));
+		scheduleSave();
+	}
+
+	/**
+	 * Writes the stream to a temporary file and moves it into place, so readers never see a partial image.
+	 */
+	public @Nonnull File store(final @Nonnull EmojiId id, final @Nonnull InputStream stream, final @Nullable String etag, final @Nullable String lastModified) throws IOException {
+		final File file = getFile(id);
+		final File parent = file.getParentFile();
+		FileUtils.forceMkdir(parent);
+		final File temp = File.createTempFile(file.getName(), ".tmp", parent);
+		final MessageDigest digest = newDigest();
+		try {
+			OutputStream output = null;
+			try {
+				output = FileUtils.openOutputStream(temp);
+				IOUtils.copy(new DigestInputStream(stream, digest), output);
+			} finally {
+				IOUtils.closeQuietly(output);
+			}
+			move(temp, file);
+		} finally {
+			FileUtils.deleteQuietly(temp);
+		}
+
+		final long now = System.currentTimeMillis();
+		final EmojiCacheEntry entry = new EmojiCacheEntry();
+		entry.size = file.length();
+		entry.sha1 = toHex(digest.digest());
+		entry.etag = etag;
+		entry.lastModified = lastModified;
+		entry.validated = now;
+		entry.lastAccess = now;
+		entry.lastStatus = HttpStatus.SC_OK;
+		synchronized (this) {
+			this.entries.put(getKey(id), entry);
+		}
+		FileUtils.deleteQuietly(EmojiFrameCache.instance.getFile(id));
+		evict(getKey(id));
+		scheduleSave();
+		return file;
+	}
+
+	public void setDecodedSize(final @Nonnull EmojiId id, final long size) {
+		synchronized (this) {
+			final EmojiCacheEntry entry = getEntry(id);
+			if (entry==null)
+				return;
+			entry.decodedSize = size;
+		}
+		evict(getKey(id));
+		scheduleSave();
+	}
+
+	/**
+	 * Records a 304 response for an entry that is already on disk.
+	 */
+	public void revalidated(final @Nonnull EmojiId id) {
+		synchronized (this) {
+			final EmojiCacheEntry entry = getEntry(id);
+			if (entry==null)
+				return;
+			entry.validated = System.currentTimeMillis();
+			entry.lastStatus = HttpStatus.SC_NOT_MODIFIED;
+			entry.failures = 0;
+			entry.retryAfter = 0;
+		}
+		scheduleSave();
+	}
+
+	/**
+	 * Records a failed download so it is not retried before the backoff expires.
+	 * @param status the HTTP status code, or 0 for I/O errors
+	 */
+	public void fail(final @Nonnull EmojiId id, final int status) {
+		synchronized (this) {
+			final EmojiCacheEntry entry = this.entries.computeIfAbsent(getKey(id), key -> new EmojiCacheEntry());
+			entry.failures++;
+			entry.lastStatus = status;
+			final long base = status==HttpStatus.SC_NOT_FOUND ? RETRY_BASE_NOT_FOUND : RETRY_BASE;
+			final long delay = Math.min(RETRY_MAX, base<<Math.min(entry.failures-1, 16));
+			entry.retryAfter = System.currentTimeMillis()+delay;
+		}
+		scheduleSave();
+	}
+
+	/**
+	 * @return true for an entry that only records a failure whose backoff ran out more than {@link #RETRY_MAX} ago.
+	 * The grace period lets repeated failures keep backing off longer, while the index only holds recent failures.
+	 */
+	private static boolean isExpiredFailure(final EmojiCacheEntry entry, final long now) {
+		return entry.size<=0&&entry.decodedSize<=0&&entry.sha1==null&&entry.retryAfter+RETRY_MAX<now;
+	}
+
+	public long getBudget() {
+		final int megabytes = EmojicordConfig.spec.isAvailable() ? EmojicordConfig.CACHE.diskCacheSize.get() : 128;
+		return Math.max(MIN_BUDGET, megabytes)*1024L*1024L;
+	}
+
+	public long getTotalSize() {
+		long total = 0;
+		for (final EmojiCacheEntry entry : this.entries.values())
+			total += entry.size+entry.decodedSize;
+		return total;
+	}
+
+	/**
+	 * @param excluded the key just stored or resized, which is read right after and so is never evicted
+	 */
+	private void evict(final @Nonnull String excluded) {
+		final List<String> evicted = Lists.newArrayList();
+		synchronized (this) {
+			final long budget = getBudget();
+			long total = getTotalSize();
+			if (total<=budget)
+				return;
+			final List<Map.Entry<String, EmojiCacheEntry>> lru = Lists.newArrayList(this.entries.entrySet());
+			lru.sort(Comparator.comparingLong(e -> e.getValue().lastAccess));
+			for (final Map.Entry<String, EmojiCacheEntry> e : lru) {
+				if (total<=budget)
+					break;
+				final long size = e.getValue().size+e.getValue().decodedSize;
+				if (size<=0||e.getKey().equals(excluded))
+					continue;
+				this.entries.remove(e.getKey());
+				evicted.add(e.getKey());
+				total -= size;
+			}
+		}
+		// Files are deleted outside the lock, so the render thread never waits on the disk in lookup
+		for (final String key : evicted) {
+			FileUtils.deleteQuietly(new File(this.directory, key));
+			FileUtils.deleteQuietly(EmojiFrameCache.instance.getFile(key));
+		}
+	}
+
+	private void scheduleSave() {
+		if (this.saveScheduled.compareAndSet(false, true))
+			this.saver.schedule(this::save, SAVE_DELAY_SEC, TimeUnit.SECONDS);
+	}
+
+	public void save() {
+		this.saveScheduled.set(false);
+		final EmojiCacheIndex index = new EmojiCacheIndex();
+		final long now = System.currentTimeMillis();
+		synchronized (this) {
+			this.entries.values().removeIf(entry -> isExpiredFailure(entry, now));
+			// Copied so the entries are not serialized while a worker thread changes them
+			for (final Map.Entry<String, EmojiCacheEntry> e : this.entries.entrySet())
+				index.entries.put(e.getKey(), copy(e.getValue()));
+		}
+		final File temp = new File(this.directory, this.indexFile.getName()+".tmp");
+		if (DataUtils.saveFile(temp, EmojiCacheIndex.class, index, "Emoji Cache Index"))
+			try {
+				move(temp, this.indexFile);
+			} catch (final IOException e) {
+				Log.log.warn("Failed to save Emoji Cache Index: ", e);
+			}
+	}
+
+	private static EmojiCacheEntry copy(final EmojiCacheEntry entry) {
+		final EmojiCacheEntry copy = new EmojiCacheEntry();
+		copy.size = entry.size;
+		copy.decodedSize = entry.decodedSize;
+		copy.sha1 = entry.sha1;
+		copy.etag = entry.etag;
+		copy.lastModified = entry.lastModified;
+		copy.validated = entry.validated;
+		copy.lastAccess = entry.lastAccess;
+		copy.failures = entry.failures;
+		copy.lastStatus = entry.lastStatus;
+		copy.retryAfter = entry.retryAfter;
+		return copy;
+	}
+
+	static void move(final File source, final File target) throws IOException {
+		try {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (final AtomicMoveNotSupportedException e) {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String toHex(final byte[] bytes) {
+		return BaseEncoding.base16().lowerCase().encode(bytes);
+	}
+}
@@ -5,19 +5,22 @@ import static net.teamfruit.emojicord.emoji.EmojiText.ParseFlag.*;
 import java.util.EnumSet;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.tuple.Pair;
 
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Maps;
 
 import net.teamfruit.emojicord.emoji.EmojiText.EmojiTextElement;
 import net.teamfruit.emojicord.emoji.EmojiText.ParseFlag;
+import net.teamfruit.emojicord.util.Metrics;
 
 public class EmojiContext {
 	public static final char EMOJI_REPLACE_CHARACTOR = '\u0000';
@@ -33,13 +36,20 @@ public class EmojiContext {
 	public static enum EmojiContextAttribute {
 		CHAT_INPUT,
 		CHAT_MESSAGE,
+		;
+
+		public final int flag;
+
+		private EmojiContextAttribute() {
+			this.flag = 1<<ordinal();
+		}
 	}
 
 	public static class EmojiContextLoader {
-		public static EmojiContext getEmojiFormattedString(final String text, final EnumSet<EmojiContextAttribute> attributes) {
+		public static EmojiContext getEmojiFormattedString(final String text, final int attributes) {
 			if (!StringUtils.isEmpty(text)) {
 				final EnumSet<ParseFlag> flags = EnumSet.of(ESCAPE, ENCODE, ENCODE_ALIAS, PARSE);
-				if (attributes.contains(EmojiContextAttribute.CHAT_MESSAGE)||attributes.contains(EmojiContextAttribute.CHAT_INPUT))
+				if (isUtfEnabled(attributes))
 					flags.add(ENCODE_UTF);
 				final EmojiText emojiText = EmojiText.create(text, flags);
 				final EmojiContext context = emojiText.getEmojiContext();
@@ -47,27 +57,94 @@ public class EmojiContext {
 			}
 			return new EmojiContext("", Maps.newHashMap());
 		}
+
+		private static boolean isUtfEnabled(final int attributes) {
+			return (attributes&(EmojiContextAttribute.CHAT_MESSAGE.flag|EmojiContextAttribute.CHAT_INPUT.flag))!=0;
+		}
+
+		/**
+		 * @return false if no character of the text can start an emoji, in which case parsing would return the text unchanged
+		 */
+		public static boolean hasCandidates(final String text, final int attributes) {
+			final StandardEmojiIdDictionary standard = StandardEmojiIdDictionary.instance;
+			final boolean utf = isUtfEnabled(attributes);
+			for (int i = 0; i<text.length(); i++) {
+				final char c = text.charAt(i);
+				// Colons start every :name: and <:name:id>, and the replace charactor is stripped by parsing
+				if (c==':'||c==EMOJI_REPLACE_CHARACTOR||standard.shortAliasTrie.startsWith(c)||utf&&standard.utfTrie.startsWith(c))
+					return true;
+			}
+			return false;
+		}
 	}
 
+	/**
+	 * Parsed texts, one bounded cache per combination of attributes, so a lookup needs no composite key.
+	 * Texts that cannot contain an emoji skip the cache entirely.
+	 */
 	public static class EmojiContextCache {
 		public static final long LIFETIME_SEC = 5;
+		public static final int MAXIMUM_SIZE = 2048;
 
 		public static final EmojiContextCache instance = new EmojiContextCache();
 
+		@SuppressWarnings("unchecked")
+		private final LoadingCache<String, EmojiContext>[] caches = new LoadingCache[1<<EmojiContextAttribute.values().length];
+		private final LongAdder plainCount = new LongAdder();
+
 		private EmojiContextCache() {
+			for (int i = 0; i<this.caches.length; i++) {
+				final int attributes = i;
+				this.caches[i] = CacheBuilder.newBuilder()
+						.expireAfterAccess(LIFETIME_SEC, TimeUnit.SECONDS)
+						.maximumSize(MAXIMUM_SIZE)
+						.recordStats()
+						.build(new CacheLoader<String, EmojiContext>() {
+							@Override
+							public EmojiContext load(final String text) throws Exception {
+								return EmojiContextLoader.getEmojiFormattedString(text, attributes);
+							}
+						});
+			}
+			Metrics.instance.gauge("context.hitRate", () -> getStats().hitRate());
+			Metrics.instance.gauge("context.plain", this::getPlainCount);
+			Metrics.instance.gauge("context.size", this::size);
+		}
+
+		/**
+		 * @param attributes the {@link EmojiContextAttribute#flag}s of the text, combined
+		 * @return null if the text cannot contain an emoji and is drawn as it is
+		 */
+		public @Nullable EmojiContext getContext(final String text, final int attributes) {
+			if (!EmojiContextLoader.hasCandidates(text, attributes)) {
+				this.plainCount.increment();
+				return null;
+			}
+			return this.caches[attributes].getUnchecked(text);
+		}
+
+		/**
+		 * @return hits and misses of all the attribute combinations, not counting texts without emojis
+		 */
+		public @Nonnull CacheStats getStats() {
+			CacheStats stats = new CacheStats(0, 0, 0, 0, 0, 0);
+			for (final LoadingCache<String, EmojiContext> cache : this.caches)
+				stats = stats.plus(cache.stats());
+			return stats;
+		}
+
+		/**
+		 * @return the number of lookups answered without parsing or caching because the text had no emoji candidates
+		 */
+		public long getPlainCount() {
+			return this.plainCount.sum();
 		}
 
-		private final LoadingCache<Pair<String, EnumSet<EmojiContextAttribute>>, EmojiContext> EMOJI_TEXT_MAP = CacheBuilder.newBuilder()
-				.expireAfterAccess(LIFETIME_SEC, TimeUnit.SECONDS)
-				.build(new CacheLoader<Pair<String, EnumSet<EmojiContextAttribute>>, EmojiContext>() {
-					@Override
-					public EmojiContext load(final Pair<String, EnumSet<EmojiContextAttribute>> entry) throws Exception {
-						return EmojiContextLoader.getEmojiFormattedString(entry.getLeft(), entry.getRight());
-					}
-				});
-
-		public @Nonnull EmojiContext getContext(final String text, final EnumSet<EmojiContextAttribute> attributes) {
-			return this.EMOJI_TEXT_MAP.getUnchecked(Pair.of(text, attributes));
+		public long size() {
+			long size = 0;
+			for (final LoadingCache<String, EmojiContext> cache : this.caches)
+				size += cache.size();
+			return size;
 		}
 	}
 }
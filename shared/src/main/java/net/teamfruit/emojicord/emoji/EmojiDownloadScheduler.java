@@ -0,0 +1,208 @@
+package net.teamfruit.emojicord.emoji;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.teamfruit.emojicord.emoji.Models.EmojiCacheEntry;
+import net.teamfruit.emojicord.util.Downloader;
+import net.teamfruit.emojicord.util.Metrics;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.message.BasicHeader;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloads emoji images on a bounded pool.
+ * Emojis drawn on screen are fetched before prefetched ones, and concurrent requests for the same {@link EmojiId} share one future.
+ * Results are stored through {@link EmojiCache}.
+ */
+public class EmojiDownloadScheduler {
+	public static final int POOL_SIZE = Downloader.maxConnectionsPerRoute;
+
+	public static final EmojiDownloadScheduler instance = new EmojiDownloadScheduler();
+
+	public enum Priority {
+		VISIBLE,
+		PREFETCH,
+	}
+
+	private final ThreadPoolExecutor executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 30, TimeUnit.SECONDS,
+			new PriorityBlockingQueue<>(),
+			new ThreadFactoryBuilder().setNameFormat("emojicord-download-%d").setDaemon(true).build());
+
+	private final Map<EmojiId, DownloadTask> inFlight = new ConcurrentHashMap<>();
+	private final AtomicLong sequence = new AtomicLong();
+
+	private final AtomicInteger running = new AtomicInteger();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong totalDownloadNanos = new AtomicLong();
+	private final Metrics.Histogram waitTime = Metrics.instance.timer("download.wait");
+	private final Metrics.Histogram downloadTime = Metrics.instance.timer("download.latency");
+
+	private EmojiDownloadScheduler() {
+		this.executor.allowCoreThreadTimeOut(true);
+		Metrics.instance.gauge("download.running", this::getRunning);
+		Metrics.instance.gauge("download.queued", this::getQueueDepth);
+		Metrics.instance.gauge("download.completed", this::getCompleted);
+		Metrics.instance.gauge("download.failed", this::getFailed);
+	}
+
+	public @Nonnull CompletableFuture<File> download(final @Nonnull EmojiId id, final @Nonnull String url, final @Nonnull Priority priority) {
+		final DownloadTask[] created = new DownloadTask[1];
+		final DownloadTask task = this.inFlight.computeIfAbsent(id, key -> created[0] = new DownloadTask(key, url, priority, this.sequence.getAndIncrement()));
+		if (task==created[0])
+			this.executor.execute(task);
+		else if (priority.ordinal()<task.priority.ordinal())
+			// Promote a queued prefetch once the emoji becomes visible
+			if (this.executor.getQueue().remove(task)) {
+				task.priority = priority;
+				this.executor.execute(task);
+			}
+		return task.future;
+	}
+
+	public int getQueueDepth() {
+		return this.executor.getQueue().size();
+	}
+
+	public int getRunning() {
+		return this.running.get();
+	}
+
+	public long getCompleted() {
+		return this.completed.get();
+	}
+
+	public long getFailed() {
+		return this.failed.get();
+	}
+
+	public long getTotalWaitNanos() {
+		return this.totalWaitNanos.get();
+	}
+
+	public long getTotalDownloadNanos() {
+		return this.totalDownloadNanos.get();
+	}
+
+	private class DownloadTask implements Runnable, Comparable<DownloadTask> {
+		private final EmojiId id;
+		private final String url;
+		private final long order;
+		private final long submitted = System.nanoTime();
+		private final CompletableFuture<File> future = new CompletableFuture<>();
+		private volatile Priority priority;
+
+		private DownloadTask(final EmojiId id, final String url, final Priority priority, final long order) {
+			this.id = id;
+			this.url = url;
+			this.priority = priority;
+			this.order = order;
+		}
+
+		@Override
+		public int compareTo(final DownloadTask o) {
+			final int result = this.priority.compareTo(o.priority);
+			if (result!=0)
+				return result;
+			return Long.compare(this.order, o.order);
+		}
+
+		@Override
+		public void run() {
+			final long started = System.nanoTime();
+			EmojiDownloadScheduler.this.totalWaitNanos.addAndGet(started-this.submitted);
+			EmojiDownloadScheduler.this.waitTime.record(started-this.submitted);
+			EmojiDownloadScheduler.this.running.incrementAndGet();
+			try {
+				final File file = downloadToCache(this.id, this.url);
+				EmojiDownloadScheduler.this.completed.incrementAndGet();
+				this.future.complete(file);
+			} catch (final Exception e) {
+				EmojiDownloadScheduler.this.failed.incrementAndGet();
+				this.future.completeExceptionally(e);
+			} finally {
+				EmojiDownloadScheduler.this.running.decrementAndGet();
+				final long elapsed = System.nanoTime()-started;
+				EmojiDownloadScheduler.this.totalDownloadNanos.addAndGet(elapsed);
+				EmojiDownloadScheduler.this.downloadTime.record(elapsed);
+				EmojiDownloadScheduler.this.inFlight.remove(this.id, this);
+			}
+		}
+	}
+
+	private static File downloadToCache(final EmojiId id, final String url) throws IOException {
+		final EmojiCache cache = EmojiCache.instance;
+		CloseableHttpResponse response = null;
+		try {
+			final HttpUriRequest req = new HttpGet(url);
+			final List<Header> headers = Lists.newArrayList(
+					new BasicHeader("User-Agent",
+							"Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/75.0.3770.80 Safari/537.36"),
+					new BasicHeader("Accept", "*/*"),
+					new BasicHeader("Accept-Encoding", ""),
+					new BasicHeader("Accept-Language", "ja,en-US;q=0.9,en;q=0.8"));
+			// Revalidate what is already on disk instead of fetching it again
+			final File cached = cache.lookup(id);
+			final EmojiCacheEntry entry = cache.getEntry(id);
+			if (cached!=null&&entry!=null) {
+				if (entry.etag!=null)
+					headers.add(new BasicHeader(HttpHeaders.IF_NONE_MATCH, entry.etag));
+				if (entry.lastModified!=null)
+					headers.add(new BasicHeader(HttpHeaders.IF_MODIFIED_SINCE, entry.lastModified));
+			}
+			req.setHeaders(headers.toArray(new Header[0]));
+			final HttpClientContext context = HttpClientContext.create();
+			try {
+				response = Downloader.downloader.client.execute(req, context);
+			} catch (final IOException e) {
+				cache.fail(id, 0);
+				throw e;
+			}
+			final HttpEntity entity = response.getEntity();
+
+			final int statusCode = response.getStatusLine().getStatusCode();
+			if (statusCode==HttpStatus.SC_NOT_MODIFIED&&cached!=null) {
+				cache.revalidated(id);
+				return cached;
+			}
+			if (statusCode!=HttpStatus.SC_OK||entity==null) {
+				cache.fail(id, statusCode);
+				throw new IOException("Invalid Status Code: "+statusCode);
+			}
+
+			final Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+			final Header lastModified = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+			try {
+				return cache.store(id, entity.getContent(),
+						etag!=null ? etag.getValue() : null,
+						lastModified!=null ? lastModified.getValue() : null);
+			} catch (final IOException e) {
+				cache.fail(id, 0);
+				throw e;
+			}
+		} finally {
+			IOUtils.closeQuietly(response);
+		}
+	}
+}
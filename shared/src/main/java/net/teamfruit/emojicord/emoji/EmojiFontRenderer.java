@@ -13,7 +13,6 @@ import net.minecraft.client.renderer.BufferBuilder;
 import net.minecraft.client.renderer.Matrix4f;
 #endif
 import net.minecraft.client.renderer.texture.TextureManager;
-import net.minecraft.util.ResourceLocation;
 import net.teamfruit.emojicord.CoreInvoke;
 import net.teamfruit.emojicord.EmojicordConfig;
 import net.teamfruit.emojicord.EmojicordScope;
@@ -21,12 +20,16 @@ import net.teamfruit.emojicord.compat.Compat;
 import net.teamfruit.emojicord.compat.CompatBaseVertex;
 import net.teamfruit.emojicord.compat.CompatVertex;
 import net.teamfruit.emojicord.compat.OpenGL;
+import net.teamfruit.emojicord.emoji.EmojiAtlas.EmojiAtlasRegion;
 import net.teamfruit.emojicord.emoji.EmojiContext.EmojiContextAttribute;
 import net.teamfruit.emojicord.emoji.EmojiText.EmojiTextElement;
+import net.teamfruit.emojicord.util.Metrics;
 import org.lwjgl.opengl.GL11;
 
 import javax.annotation.Nullable;
-import java.util.EnumSet;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 @CoreInvoke
 public class EmojiFontRenderer {
@@ -35,39 +38,35 @@ public class EmojiFontRenderer {
 	@CoreInvoke
 	public static int index;
 
+	/**
+	 * Set while text that never holds emojis is drawn, such as the metrics overlay, so it skips parsing and is left out of the metrics.
+	 */
+	public static boolean bypass;
+
 	private static EmojiContext CurrentContext;
 
+	private static final Metrics.FrameCounter contextCalls = Metrics.instance.frameCounter("font.contexts");
+
 	@CoreInvoke
 	public static String updateEmojiContext(final String text) {
+		if (bypass) {
+			CurrentContext = null;
+			return text;
+		}
+		contextCalls.increment();
 		if (EmojicordConfig.spec.isAvailable() && EmojicordConfig.RENDER.renderEnabled.get()) {
-			final EnumSet<EmojiContextAttribute> attributes = EnumSet.noneOf(EmojiContextAttribute.class);
-			final StackTraceElement[] stacks = Thread.currentThread().getStackTrace();
-			if (EmojicordScope.instance.checkIsInput(stacks))
-				attributes.add(EmojiContextAttribute.CHAT_INPUT);
-			if (EmojicordScope.instance.checkIsMessage(stacks))
-				attributes.add(EmojiContextAttribute.CHAT_MESSAGE);
+			int attributes = 0;
+			if (EmojicordScope.instance.checkIsInput())
+				attributes |= EmojiContextAttribute.CHAT_INPUT.flag;
+			if (EmojicordScope.instance.checkIsMessage())
+				attributes |= EmojiContextAttribute.CHAT_MESSAGE.flag;
 			CurrentContext = EmojiContext.EmojiContextCache.instance.getContext(text, attributes);
-			return CurrentContext.text;
+			return CurrentContext != null ? CurrentContext.text : text;
 		}
 		CurrentContext = null;
 		return text;
 	}
 
-	/*
-	public static void main(final String... args) {
-		Log.log.info("Start");
-		final int count = 1_000_000;
-		Log.log.info("Count: "+count);
-		final long time = System.nanoTime();
-		for (int i = 0; i<count; i++)
-			Thread.currentThread().getStackTrace();
-		final long diff = System.nanoTime()-time;
-		Log.log.info("Finish");
-		Log.log.info(diff/1e9);
-		Log.log.info(diff/1e9/count);
-	}
-	*/
-
 	#if MC_12_LATER
 	public static abstract class CompatGlyph implements IGlyph {
 		public final float width;
@@ -101,7 +100,7 @@ public class EmojiFontRenderer {
 			if (emojiElement!=null) {
 				final EmojiId emojiId = emojiElement.id;
 				if (emojiId!=null)
-					return new EmojiGlyph(emojiId);
+					return EmojiObject.EmojiObjectCache.instance.getEmojiObject(emojiId).getGlyph();
 			}
 		}
 		return null;
@@ -112,27 +111,35 @@ public class EmojiFontRenderer {
 		public static final float GlyphWidth = 10;
 		public static final float GlyphHeight = 10;
 
-		private final EmojiId emojiId;
+		private final EmojiObject emoji;
+		// One per region: loading, error, and each uploaded frame
+		private final Map<EmojiAtlasRegion, EmojiTexturedGlyph> texturedGlyphs = new IdentityHashMap<>();
 
-		public EmojiGlyph(final EmojiId emojiId) {
+		public EmojiGlyph(final EmojiObject emoji) {
 			super(GlyphWidth, GlyphHeight);
-			this.emojiId = emojiId;
+			this.emoji = emoji;
 		}
 
 		@CoreInvoke
 		public EmojiTexturedGlyph getTexturedGlyph() {
-			return new EmojiTexturedGlyph(this.emojiId);
+			final EmojiAtlasRegion region = this.emoji.loadAndGetRegion();
+			EmojiTexturedGlyph glyph = this.texturedGlyphs.get(region);
+			if (glyph==null) {
+				glyph = new EmojiTexturedGlyph(region, GlyphWidth, GlyphHeight);
+				this.texturedGlyphs.put(region, glyph);
+			}
+			return glyph;
+		}
+
+		public void invalidate() {
+			this.texturedGlyphs.clear();
 		}
 	}
 
 	@CoreInvoke
 	public static class EmojiTexturedGlyph extends TexturedGlyph {
-		public EmojiTexturedGlyph(final ResourceLocation texture, final float width, final float height) {
-			super( #if MC_14_LATER RenderType.getText(texture), RenderType.getTextSeeThrough(texture) #else texture #endif , 0, 1, 0, 1, 0, width, 0+3, height+3);
-		}
-
-		public EmojiTexturedGlyph(final EmojiId emojiId) {
-			this(EmojiObject.EmojiObjectCache.instance.getEmojiObject(emojiId).loadAndGetResourceLocation(), EmojiGlyph.GlyphWidth, EmojiGlyph.GlyphHeight);
+		public EmojiTexturedGlyph(final EmojiAtlasRegion region, final float width, final float height) {
+			super( #if MC_14_LATER RenderType.getText(region.location), RenderType.getTextSeeThrough(region.location) #else region.location #endif , region.u0, region.u1, region.v0, region.v1, 0, width, 0+3, height+3);
 		}
 
 		#if MC_14_LATER
@@ -150,6 +157,8 @@ public class EmojiFontRenderer {
 		#endif
 	}
 	#else
+	private static final EmojiQuadBatch batch = new EmojiQuadBatch();
+
 	@CoreInvoke
 	public static boolean renderEmojiChar(final char c, final boolean italic, final float x, final float y, final float red, final float green, final float blue, final float alpha) {
 		if (CurrentContext != null) {
@@ -157,10 +166,9 @@ public class EmojiFontRenderer {
 			if (emojiElement != null) {
 				final EmojiId emojiId = emojiElement.id;
 				if (emojiId != null) {
-					final EmojiObject emoji = EmojiObject.EmojiObjectCache.instance.getEmojiObject(emojiId);
 					if (!shadow) {
-						Compat.getMinecraft().getTextureManager().bindTexture(emoji.loadAndGetResourceLocation());
-						renderEmoji(emoji, x, y, red, green, blue, alpha);
+						final EmojiObject emoji = EmojiObject.EmojiObjectCache.instance.getEmojiObject(emojiId);
+						batch.add(emoji.loadAndGetRegion(), x, y, red, green, blue, alpha);
 					}
 					return c == EmojiContext.EMOJI_REPLACE_CHARACTOR;
 				}
@@ -169,43 +177,82 @@ public class EmojiFontRenderer {
 		return false;
 	}
 
-	public static void renderEmoji(final EmojiObject emoji, final float x, final float y, final float red, final float green, final float blue, final float alpha) {
-		final float textureSize = 16.0F;
-		final float textureX = 0.0F / textureSize;
-		final float textureY = 0.0F / textureSize;
-		final float textureOffset = 16.0F / textureSize;
-		final float size = 10.0F;
-		final float offsetY = 1.0F;
-		final float offsetX = 0.0F;
-
-		OpenGL.glPushAttrib();
-
-		final int rgba = OpenGL.glGetColorRGBA();
-		OpenGL.glColor4f(1.0F, 1.0F, 1.0F, (OpenGL.glGetColorRGBA() >> 24 & 0xff) / 256f);
-
-		//OpenGL.glEnable(GL11.GL_BLEND);
-		//OpenGL.glEnable(GL11.GL_ALPHA_TEST);
-
-		//OpenGL.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR);
-		//OpenGL.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
-		//OpenGL.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
-		//OpenGL.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_NEAREST);
-		final CompatBaseVertex bufferbuilder = CompatVertex.getTessellator();
-		bufferbuilder.beginTexture(GL11.GL_QUADS);
-		bufferbuilder.pos(x - offsetX, y - offsetY, 0.0F).tex(textureX, textureY);
-		bufferbuilder.pos(x - offsetX, y + size - offsetY, 0.0F).tex(textureX, textureY + textureOffset);
-		bufferbuilder.pos(x - offsetX + size, y + size - offsetY, 0.0F).tex(textureX + textureOffset, textureY + textureOffset);
-		bufferbuilder.pos(x - offsetX + size, y - offsetY, 0.0F).tex(textureX + textureOffset, textureY);
-		bufferbuilder.draw();
-		//OpenGL.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
-		//OpenGL.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_NEAREST);
-
-		//OpenGL.glDisable(GL11.GL_ALPHA_TEST);
-		//OpenGL.glDisable(GL11.GL_BLEND);
-
-		OpenGL.glColorRGBA(rgba);
-
-		OpenGL.glPopAttrib();
+	/**
+	 * Draws the emojis queued while rendering the current string, called at every return of renderStringAtPos.
+	 */
+	@CoreInvoke
+	public static void flushEmojis() {
+		batch.flush();
+	}
+
+	/**
+	 * Emoji quads of one string, drawn after the text with one draw call per texture.
+	 */
+	private static class EmojiQuadBatch {
+		private static final float size = 10.0F;
+		private static final float offsetY = 1.0F;
+		private static final float offsetX = 0.0F;
+
+		private EmojiAtlasRegion[] regions = new EmojiAtlasRegion[16];
+		private float[] positions = new float[16*2];
+		private int count;
+
+		private float red;
+		private float green;
+		private float blue;
+		private float alpha;
+
+		public void add(final EmojiAtlasRegion region, final float x, final float y, final float red, final float green, final float blue, final float alpha) {
+			if (this.count >= this.regions.length) {
+				this.regions = Arrays.copyOf(this.regions, this.count * 2);
+				this.positions = Arrays.copyOf(this.positions, this.count * 2 * 2);
+			}
+			this.regions[this.count] = region;
+			this.positions[this.count * 2] = x;
+			this.positions[this.count * 2 + 1] = y;
+			this.count++;
+			this.red = red;
+			this.green = green;
+			this.blue = blue;
+			this.alpha = alpha;
+		}
+
+		public void flush() {
+			if (this.count <= 0)
+				return;
+
+			OpenGL.glPushAttrib();
+			// The font color is known on the CPU, so there is no need to read it back from GL
+			OpenGL.glColor4f(1.0F, 1.0F, 1.0F, this.alpha);
+
+			final CompatBaseVertex bufferbuilder = CompatVertex.getTessellator();
+			for (int i = 0; i < this.count; i++) {
+				final EmojiAtlasRegion first = this.regions[i];
+				if (first == null)
+					continue;
+				Compat.getMinecraft().getTextureManager().bindTexture(first.location);
+				bufferbuilder.beginTexture(GL11.GL_QUADS);
+				for (int j = i; j < this.count; j++) {
+					final EmojiAtlasRegion region = this.regions[j];
+					if (region != null && region.location.equals(first.location)) {
+						final float x = this.positions[j * 2];
+						final float y = this.positions[j * 2 + 1];
+						bufferbuilder.pos(x - offsetX, y - offsetY, 0.0F).tex(region.u0, region.v0);
+						bufferbuilder.pos(x - offsetX, y + size - offsetY, 0.0F).tex(region.u0, region.v1);
+						bufferbuilder.pos(x - offsetX + size, y + size - offsetY, 0.0F).tex(region.u1, region.v1);
+						bufferbuilder.pos(x - offsetX + size, y - offsetY, 0.0F).tex(region.u1, region.v0);
+						this.regions[j] = null;
+					}
+				}
+				bufferbuilder.draw();
+			}
+			this.count = 0;
+
+			// Same argument order as FontRenderer.renderString, whose "blue" field holds green and vice versa
+			OpenGL.glColor4f(this.red, this.blue, this.green, this.alpha);
+
+			OpenGL.glPopAttrib();
+		}
 	}
 	#endif
 }
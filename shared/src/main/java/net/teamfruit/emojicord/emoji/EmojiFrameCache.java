@@ -0,0 +1,185 @@
+package net.teamfruit.emojicord.emoji;
+
+import com.google.common.collect.Lists;
+import net.teamfruit.emojicord.Locations;
+import net.teamfruit.emojicord.Log;
+import net.teamfruit.emojicord.emoji.EmojiAtlas.EmojiAtlasSprite;
+import net.teamfruit.emojicord.emoji.Models.EmojiCacheEntry;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.tuple.Pair;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Second cache tier holding frames already decoded and padded by {@link EmojiAtlas#prepare}.
+ * A file is read in one bulk read into a direct buffer, and the pixels are handed to the atlas as slices of it without decoding.
+ * The file is not kept mapped, so it can be replaced or deleted while its frames are still in use.
+ * <p>
+ * Layout, big-endian header followed by native-order pixels:
+ * <pre>
+ * int magic, int version, byte nativeLittleEndian, byte[40] source sha1 (hex), int variantSize, int frameCount
+ * frameCount * (int delay, int width, int height, int sizeClass)
+ * frameCount * (slotSize * slotSize ints)
+ * </pre>
+ * Only the variant decoded last is kept; loading another one decodes the source again and replaces the file.
+ */
+public class EmojiFrameCache {
+	private static final int MAGIC = 0x45434652; // "ECFR"
+	private static final int VERSION = 2;
+	private static final int HASH_LENGTH = 40;
+	private static final int HEADER_SIZE = 4+4+1+HASH_LENGTH+4+4;
+	private static final int FRAME_HEADER_SIZE = 4*4;
+
+	public static final EmojiFrameCache instance = new EmojiFrameCache();
+
+	private final File directory = new File(Locations.instance.getCacheDirectory(), "frames");
+
+	private EmojiFrameCache() {
+	}
+
+	public @Nonnull File getFile(final @Nonnull EmojiId id) {
+		return getFile(id.getCacheKey());
+	}
+
+	File getFile(final String key) {
+		return new File(this.directory, key+".bin");
+	}
+
+	private static boolean isLittleEndian() {
+		return ByteOrder.nativeOrder()==ByteOrder.LITTLE_ENDIAN;
+	}
+
+	/**
+	 * @return the frames decoded from the current cache file at the given variant size, or null if they have not been stored or are stale
+	 */
+	public @Nullable List<Pair<Integer, EmojiAtlasSprite>> load(final @Nonnull EmojiId id, final int variantSize) {
+		final EmojiCacheEntry entry = EmojiCache.instance.getEntry(id);
+		final File file = getFile(id);
+		if (entry==null||entry.sha1==null||!file.isFile())
+			return null;
+		List<Pair<Integer, EmojiAtlasSprite>> frames = null;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			final long size = channel.size();
+			if (size<=Integer.MAX_VALUE) {
+				final ByteBuffer buffer = ByteBuffer.allocateDirect((int) size);
+				while (buffer.hasRemaining())
+					if (channel.read(buffer)<0)
+						break;
+				buffer.flip();
+				frames = read(buffer, entry.sha1, variantSize);
+			}
+		} catch (final IOException | RuntimeException e) {
+			Log.log.debug("Failed to read decoded emoji cache: ", e);
+		}
+		if (frames!=null)
+			return frames;
+		FileUtils.deleteQuietly(file);
+		return null;
+	}
+
+	private static @Nullable List<Pair<Integer, EmojiAtlasSprite>> read(final ByteBuffer buffer, final String sha1, final int variantSize) {
+		if (buffer.remaining()<HEADER_SIZE)
+			return null;
+		if (buffer.getInt()!=MAGIC||buffer.getInt()!=VERSION)
+			return null;
+		if (buffer.get()!=(isLittleEndian() ? 1 : 0))
+			return null;
+		final byte[] hash = new byte[HASH_LENGTH];
+		buffer.get(hash);
+		if (!sha1.equals(new String(hash, StandardCharsets.US_ASCII)))
+			return null;
+		if (buffer.getInt()!=variantSize)
+			return null;
+		final int frameCount = buffer.getInt();
+		if (frameCount<=0||buffer.remaining()<frameCount*FRAME_HEADER_SIZE)
+			return null;
+
+		final int[][] headers = new int[frameCount][];
+		for (int i = 0; i<frameCount; i++) {
+			final int delay = buffer.getInt();
+			final int width = buffer.getInt();
+			final int height = buffer.getInt();
+			final int sizeClass = buffer.getInt();
+			if (!EmojiAtlas.isSizeClass(sizeClass)||width<=0||height<=0||width>sizeClass||height>sizeClass)
+				return null;
+			headers[i] = new int[] { delay, width, height, sizeClass };
+		}
+
+		final List<Pair<Integer, EmojiAtlasSprite>> frames = Lists.newArrayListWithCapacity(frameCount);
+		int position = buffer.position();
+		for (final int[] header : headers) {
+			final int slotSize = header[3]+EmojiAtlas.PADDING*2;
+			final int length = slotSize*slotSize*4;
+			if (buffer.limit()-position<length)
+				return null;
+			final ByteBuffer slice = buffer.duplicate();
+			slice.position(position).limit(position+length);
+			final IntBuffer pixels = slice.slice().order(ByteOrder.nativeOrder()).asIntBuffer();
+			frames.add(Pair.of(header[0], new EmojiAtlasSprite(pixels, header[1], header[2], header[3])));
+			position += length;
+		}
+		return frames;
+	}
+
+	/**
+	 * Stores decoded frames for the current cache file, replacing the previous ones atomically.
+	 */
+	public void save(final @Nonnull EmojiId id, final int variantSize, final @Nonnull List<Pair<Integer, EmojiAtlasSprite>> frames) {
+		final EmojiCacheEntry entry = EmojiCache.instance.getEntry(id);
+		if (entry==null||entry.sha1==null||entry.sha1.length()!=HASH_LENGTH||frames.isEmpty())
+			return;
+
+		int size = HEADER_SIZE+frames.size()*FRAME_HEADER_SIZE;
+		for (final Pair<Integer, EmojiAtlasSprite> frame : frames)
+			size += frame.getRight().pixels.remaining()*4;
+
+		final ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.put((byte) (isLittleEndian() ? 1 : 0));
+		buffer.put(entry.sha1.getBytes(StandardCharsets.US_ASCII));
+		buffer.putInt(variantSize);
+		buffer.putInt(frames.size());
+		for (final Pair<Integer, EmojiAtlasSprite> frame : frames) {
+			final EmojiAtlasSprite sprite = frame.getRight();
+			buffer.putInt(frame.getLeft());
+			buffer.putInt(sprite.width);
+			buffer.putInt(sprite.height);
+			buffer.putInt(sprite.sizeClass);
+		}
+		for (final Pair<Integer, EmojiAtlasSprite> frame : frames) {
+			final ByteBuffer pixels = buffer.slice().order(ByteOrder.nativeOrder());
+			pixels.asIntBuffer().put(frame.getRight().pixels.duplicate());
+			buffer.position(buffer.position()+frame.getRight().pixels.remaining()*4);
+		}
+		buffer.flip();
+
+		final File file = getFile(id);
+		File temp = null;
+		try {
+			FileUtils.forceMkdir(file.getParentFile());
+			temp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+			try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				while (buffer.hasRemaining())
+					channel.write(buffer);
+			}
+			EmojiCache.move(temp, file);
+			EmojiCache.instance.setDecodedSize(id, size);
+		} catch (final IOException e) {
+			Log.log.warn("Failed to save decoded emoji cache: ", e);
+		} finally {
+			if (temp!=null)
+				FileUtils.deleteQuietly(temp);
+		}
+	}
+}
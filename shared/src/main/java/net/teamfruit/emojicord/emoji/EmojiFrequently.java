@@ -52,6 +52,13 @@ public class EmojiFrequently {
 		return new PickerGroup("FREQUENTLY USED", list);
 	}
 
+	/**
+	 * @return how many times each emoji appears in the history
+	 */
+	public Map<EmojiId, Integer> getUsage() {
+		return this.frequently.stream().collect(Collectors.groupingBy(e -> e.id, Collectors.summingInt(e -> 1)));
+	}
+
 	public void load(final File dictDir) {
 		this.frequently.clear();
 		this.save = new File(dictDir, "history.json");
@@ -0,0 +1,172 @@
+package net.teamfruit.emojicord.emoji;
+
+import com.google.common.collect.Lists;
+import com.madgag.gif.fmsware.GifDecoder;
+import net.teamfruit.emojicord.Log;
+import net.teamfruit.emojicord.emoji.EmojiAtlas.EmojiAtlasSprite;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.commons.lang3.tuple.MutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.w3c.dom.Node;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Decodes animated GIFs one frame at a time into a single reusable canvas.
+ * Each composited frame is scaled down by {@link EmojiAtlas#prepare} right away, so no full-size frame outlives its turn.
+ * Frames identical to the one before are merged into it, and decoding stops at {@link #MAX_FRAMES} or {@link #MAX_BYTES}.
+ */
+public class EmojiGifDecoder {
+	public static final int MAX_FRAMES = 256;
+	public static final int MAX_BYTES = 4*1024*1024;
+
+	private static final String IMAGE_FORMAT = "javax_imageio_gif_image_1.0";
+	private static final String STREAM_FORMAT = "javax_imageio_gif_stream_1.0";
+
+	private final List<Pair<Integer, EmojiAtlasSprite>> frames = Lists.newArrayList();
+	private final int size;
+	private int bytes;
+
+	private EmojiGifDecoder(final int size) {
+		this.size = size;
+	}
+
+	/**
+	 * @param size the variant size passed to {@link EmojiAtlas#prepare}
+	 * @return the frames with their delays in milliseconds, or null if the data is not a readable GIF
+	 */
+	public static @Nullable List<Pair<Integer, EmojiAtlasSprite>> decode(final @Nonnull byte[] data, final int size) {
+		try {
+			final EmojiGifDecoder decoder = new EmojiGifDecoder(size);
+			if (decoder.read(data))
+				return decoder.frames;
+		} catch (final IOException|RuntimeException e) {
+			// The JDK reader rejects some malformed GIFs that browsers and Discord accept
+			Log.log.debug("Falling back to the buffered GIF decoder: ", e);
+		}
+		final EmojiGifDecoder decoder = new EmojiGifDecoder(size);
+		final GifDecoder d = new GifDecoder();
+		if (d.read(new ByteArrayInputStream(data))!=GifDecoder.STATUS_OK||d.getFrameCount()<=0)
+			return null;
+		for (int i = 0; i<d.getFrameCount(); i++)
+			if (!decoder.add(d.getDelay(i), d.getFrame(i)))
+				break;
+		return decoder.frames;
+	}
+
+	private boolean read(final byte[] data) throws IOException {
+		try (ImageInputStream stream = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+			final Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+			if (!readers.hasNext())
+				return false;
+			final ImageReader reader = readers.next();
+			try {
+				reader.setInput(stream, false, false);
+				BufferedImage canvas = null;
+				BufferedImage backup = null;
+				for (int i = 0; ; i++) {
+					final BufferedImage image;
+					try {
+						image = reader.read(i);
+					} catch (final IndexOutOfBoundsException e) {
+						break;
+					}
+					if (canvas==null) {
+						final IIOMetadataNode screen = getNode(reader.getStreamMetadata(), STREAM_FORMAT, "LogicalScreenDescriptor");
+						canvas = new BufferedImage(
+								Math.max(getInt(screen, "logicalScreenWidth"), image.getWidth()),
+								Math.max(getInt(screen, "logicalScreenHeight"), image.getHeight()),
+								BufferedImage.TYPE_INT_ARGB);
+					}
+
+					final IIOMetadata metadata = reader.getImageMetadata(i);
+					final IIOMetadataNode descriptor = getNode(metadata, IMAGE_FORMAT, "ImageDescriptor");
+					final IIOMetadataNode control = getNode(metadata, IMAGE_FORMAT, "GraphicControlExtension");
+					final int x = getInt(descriptor, "imageLeftPosition");
+					final int y = getInt(descriptor, "imageTopPosition");
+					final String disposal = control!=null ? control.getAttribute("disposalMethod") : "none";
+					// GIF delays are in hundredths of a second
+					final int delay = getInt(control, "delayTime")*10;
+
+					final boolean restore = "restoreToPrevious".equals(disposal);
+					if (restore) {
+						if (backup==null)
+							backup = new BufferedImage(canvas.getWidth(), canvas.getHeight(), BufferedImage.TYPE_INT_ARGB);
+						replace(backup, canvas);
+					}
+					final Graphics2D g = canvas.createGraphics();
+					try {
+						g.drawImage(image, x, y, null);
+						if (!add(delay, canvas))
+							break;
+						if ("restoreToBackgroundColor".equals(disposal)) {
+							g.setComposite(AlphaComposite.Clear);
+							g.fillRect(x, y, image.getWidth(), image.getHeight());
+						} else if (restore)
+							replace(canvas, backup);
+					} finally {
+						g.dispose();
+					}
+				}
+				return !this.frames.isEmpty();
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Scales the composited frame down and appends it, or extends the previous frame if they look the same.
+	 * @return false once a cap is reached and no more frames should be decoded
+	 */
+	private boolean add(final int delay, final BufferedImage image) {
+		final EmojiAtlasSprite sprite = EmojiAtlas.prepare(image, this.size);
+		if (!this.frames.isEmpty()) {
+			final Pair<Integer, EmojiAtlasSprite> last = this.frames.get(this.frames.size()-1);
+			if (last.getRight().pixels.equals(sprite.pixels)) {
+				((MutablePair<Integer, EmojiAtlasSprite>) last).setLeft(last.getLeft()+delay);
+				return true;
+			}
+		}
+		final int size = sprite.pixels.remaining()*4;
+		if (this.frames.size()>=MAX_FRAMES||!this.frames.isEmpty()&&this.bytes+size>MAX_BYTES)
+			return false;
+		this.frames.add(MutablePair.of(delay, sprite));
+		this.bytes += size;
+		return true;
+	}
+
+	private static void replace(final BufferedImage target, final BufferedImage source) {
+		final int[] from = ((DataBufferInt) source.getRaster().getDataBuffer()).getData();
+		final int[] to = ((DataBufferInt) target.getRaster().getDataBuffer()).getData();
+		System.arraycopy(from, 0, to, 0, from.length);
+	}
+
+	private static @Nullable IIOMetadataNode getNode(final @Nullable IIOMetadata metadata, final String format, final String name) {
+		if (metadata==null)
+			return null;
+		final Node root = metadata.getAsTree(format);
+		for (Node node = root.getFirstChild(); node!=null; node = node.getNextSibling())
+			if (name.equals(node.getNodeName()))
+				return (IIOMetadataNode) node;
+		return null;
+	}
+
+	private static int getInt(final @Nullable IIOMetadataNode node, final String attribute) {
+		return node!=null ? NumberUtils.toInt(node.getAttribute(attribute)) : 0;
+	}
+}
@@ -1,27 +1,50 @@
 package net.teamfruit.emojicord.emoji;
 
 import java.io.File;
-import java.util.Objects;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nullable;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
 import net.minecraft.util.ResourceLocation;
 import net.teamfruit.emojicord.Locations;
 import net.teamfruit.emojicord.Reference;
 import net.teamfruit.emojicord.util.Base64Utils;
 
+/**
+ * Emoji identity. Standard ids and Discord ids listed in the dictionaries are interned, so lookups usually return a shared object.
+ */
 public abstract class EmojiId {
-	public final EmojiIdNode node = new EmojiIdNode();
+	private String cacheKey;
+	private File cache;
+	private ResourceLocation resourceLocation;
 
 	public abstract String getId();
 
 	public abstract String getType();
 
+	/**
+	 * @return "type/cacheName", the path of this emoji inside the cache directory
+	 */
+	public String getCacheKey() {
+		String cacheKey = this.cacheKey;
+		if (cacheKey==null)
+			this.cacheKey = cacheKey = getType()+"/"+getCacheName();
+		return cacheKey;
+	}
+
 	public File getCache() {
-		return new File(Locations.instance.getCacheDirectory(), String.format("%s/%s", getType(), getCacheName()));
+		File cache = this.cache;
+		if (cache==null)
+			this.cache = cache = new File(Locations.instance.getCacheDirectory(), getCacheKey());
+		return cache;
 	}
 
 	public abstract String getRemote();
@@ -31,24 +54,10 @@ public abstract class EmojiId {
 	}
 
 	public ResourceLocation getResourceLocation() {
-		return new ResourceLocation(Reference.MODID, String.format("textures/emojis/%s/%s", getType(), getCacheName()));
-	}
-
-	@Override
-	public int hashCode() {
-		return Objects.hash(getId(), getType());
-	}
-
-	@Override
-	public boolean equals(final Object obj) {
-		if (this==obj)
-			return true;
-		if (obj==null)
-			return false;
-		if (!(obj instanceof EmojiId))
-			return false;
-		final EmojiId other = (EmojiId) obj;
-		return Objects.equals(getId(), other.getId())&&Objects.equals(getType(), other.getType());
+		ResourceLocation resourceLocation = this.resourceLocation;
+		if (resourceLocation==null)
+			this.resourceLocation = resourceLocation = new ResourceLocation(Reference.MODID, "textures/emojis/"+getCacheKey());
+		return resourceLocation;
 	}
 
 	@Override
@@ -56,47 +65,39 @@ public abstract class EmojiId {
 		return "EmojiId [id="+getId()+", type="+getType()+"]";
 	}
 
-	public class EmojiIdNode extends Node<EmojiId> {
-		public EmojiIdNode() {
-			super(EmojiId.this);
-		}
-
-		public String getUniqueName(final String name) {
-			final int count = countPrev();
-			if (count>0)
-				return name+"~"+count;
-			return name;
-		}
-	}
+	public static class StandardEmojiId extends EmojiId {
+		private static final Map<String, StandardEmojiId> registry = Maps.newHashMap();
+		private static final List<StandardEmojiId> indexes = Lists.newArrayList();
 
-	public static class Node<T> {
-		public final T value;
-		public Node<T> prev;
+		private final int index;
+		private final String url;
+		private final String cache;
 
-		public Node(final T value) {
-			this.value = value;
+		private StandardEmojiId(final int index, final String url, final String cache) {
+			this.index = index;
+			this.url = url;
+			this.cache = StringUtils.replace(cache, ":", ".");
 		}
 
-		public void linkPrev(final Node<T> insert) {
-			this.prev = insert;
+		/**
+		 * @return the interned id for the url, assigning it the next dense index on first use
+		 */
+		public static synchronized StandardEmojiId of(final String url, final String cache) {
+			StandardEmojiId id = registry.get(url);
+			if (id==null) {
+				id = new StandardEmojiId(indexes.size(), url, cache);
+				registry.put(url, id);
+				indexes.add(id);
+			}
+			return id;
 		}
 
-		public int countPrev() {
-			int count = 0;
-			if (this.prev!=null)
-				for (Node<T> i = this; i.prev!=null; i = i.prev)
-					count++;
-			return count;
+		public static synchronized @Nullable StandardEmojiId fromIndex(final int index) {
+			return index>=0&&index<indexes.size() ? indexes.get(index) : null;
 		}
-	}
 
-	public static class StandardEmojiId extends EmojiId {
-		private final String url;
-		private final String cache;
-
-		public StandardEmojiId(final String url, final String cache) {
-			this.url = url;
-			this.cache = cache;
+		public int getIndex() {
+			return this.index;
 		}
 
 		@Override
@@ -106,7 +107,7 @@ public abstract class EmojiId {
 
 		@Override
 		public String getCacheName() {
-			return StringUtils.replace(this.cache, ":", ".");
+			return this.cache;
 		}
 
 		@Override
@@ -119,6 +120,16 @@ public abstract class EmojiId {
 			return getId();
 		}
 
+		@Override
+		public int hashCode() {
+			return this.index;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			return this==obj;
+		}
+
 		public static @Nullable EmojiId fromAlias(final String id) {
 			return StandardEmojiIdDictionary.instance.aliasDictionary.get(id);
 		}
@@ -129,15 +140,25 @@ public abstract class EmojiId {
 	}
 
 	public static class DiscordEmojiId extends EmojiId {
+		private static volatile DiscordEmojiIdRegistry registry = new DiscordEmojiIdRegistry(Lists.newArrayList());
+
 		private final long id;
+		private final int hash;
+		private final String idString;
 
 		private DiscordEmojiId(final long id) {
 			this.id = id;
+			this.hash = Long.hashCode(id);
+			this.idString = Long.toString(id);
+		}
+
+		public long getLongId() {
+			return this.id;
 		}
 
 		@Override
 		public String getId() {
-			return Long.toString(this.id);
+			return this.idString;
 		}
 
 		@Override
@@ -147,15 +168,42 @@ public abstract class EmojiId {
 
 		@Override
 		public String getRemote() {
-			return "https://cdn.discordapp.com/emojis/"+getId();
+			// Ask the CDN for the largest variant instead of the uploaded original, which can be several hundred pixels
+			return "https://cdn.discordapp.com/emojis/"+getId()+"?size="+EmojiAtlas.VARIANT_SIZES[EmojiAtlas.VARIANT_SIZES.length-1];
 		}
 
 		public String getEncodedId() {
 			return Base64Utils.encode(this.id);
 		}
 
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			// Ids typed in chat for emojis outside the dictionaries are not interned, so compare by value
+			return this==obj||obj instanceof DiscordEmojiId&&((DiscordEmojiId) obj).id==this.id;
+		}
+
+		/**
+		 * @return the registered id if the emoji is listed in a dictionary, or else a new id that is not kept
+		 */
 		public static @Nullable EmojiId fromDecimalId(final long id) {
-			return new DiscordEmojiId(id);
+			final DiscordEmojiId registered = registry.get(id);
+			return registered!=null ? registered : new DiscordEmojiId(id);
+		}
+
+		/**
+		 * Replaces the registered ids with those of a newly loaded dictionary, so the table never outgrows the dictionaries.
+		 */
+		static void register(final Collection<? extends EmojiId> ids) {
+			final List<DiscordEmojiId> discordIds = Lists.newArrayList();
+			for (final EmojiId id : ids)
+				if (id instanceof DiscordEmojiId)
+					discordIds.add((DiscordEmojiId) id);
+			registry = new DiscordEmojiIdRegistry(discordIds);
 		}
 
 		public static @Nullable EmojiId fromDecimalId(final String id) {
@@ -166,10 +214,52 @@ public abstract class EmojiId {
 
 		public static @Nullable EmojiId fromEncodedId(final String id) {
 			try {
-				return new DiscordEmojiId(Base64Utils.decode(id));
+				return fromDecimalId(Base64Utils.decode(id));
 			} catch (final IllegalArgumentException e) {
 			}
 			return null;
 		}
+
+		/**
+		 * Immutable open-addressing map from snowflake to its interned id, probed linearly.
+		 * A reload publishes a new table, so the parse path reads it without locking.
+		 */
+		private static class DiscordEmojiIdRegistry {
+			private final long[] keys;
+			private final DiscordEmojiId[] values;
+
+			private DiscordEmojiIdRegistry(final Collection<DiscordEmojiId> ids) {
+				int capacity = 16;
+				while (capacity<ids.size()*2)
+					capacity <<= 1;
+				this.keys = new long[capacity];
+				this.values = new DiscordEmojiId[capacity];
+				final int mask = capacity-1;
+				for (final DiscordEmojiId id : ids) {
+					int i = mix(id.id)&mask;
+					while (this.values[i]!=null&&this.keys[i]!=id.id)
+						i = i+1&mask;
+					this.keys[i] = id.id;
+					this.values[i] = id;
+				}
+			}
+
+			private static int mix(final long key) {
+				final long h = key*0x9E3779B97F4A7C15L;
+				return (int) (h^h>>>32);
+			}
+
+			public @Nullable DiscordEmojiId get(final long id) {
+				final int mask = this.keys.length-1;
+				int i = mix(id)&mask;
+				DiscordEmojiId value;
+				while ((value = this.values[i])!=null) {
+					if (this.keys[i]==id)
+						return value;
+					i = i+1&mask;
+				}
+				return null;
+			}
+		}
 	}
 }
@@ -1,273 +1,240 @@
 package net.teamfruit.emojicord.emoji;
 
-#if MC_12_LATER
-import net.minecraft.resources.IResourceManager;
-#else
-import net.minecraft.client.resources.IResourceManager;
-#endif
-
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
-import com.madgag.gif.fmsware.GifDecoder;
-import net.minecraft.client.renderer.texture.SimpleTexture;
 import net.minecraft.util.ResourceLocation;
 import net.teamfruit.emojicord.Log;
-import net.teamfruit.emojicord.compat.Compat;
-import net.teamfruit.emojicord.compat.Compat.CompatTexture;
-import net.teamfruit.emojicord.util.Downloader;
-import net.teamfruit.emojicord.util.Timer;
+import net.teamfruit.emojicord.emoji.EmojiAtlas.EmojiAtlasRegion;
+import net.teamfruit.emojicord.emoji.EmojiAtlas.EmojiAtlasSprite;
+import net.teamfruit.emojicord.emoji.EmojiDownloadScheduler.Priority;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.tuple.Pair;
-import org.apache.http.Header;
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpStatus;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.client.protocol.HttpClientContext;
-import org.apache.http.message.BasicHeader;
 
 import javax.annotation.Nonnull;
+import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
-import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Supplier;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 public class EmojiObject {
 	public static final ResourceLocation loading_texture = new ResourceLocation("emojicord", "textures/26a0.png");
 	public static final ResourceLocation error_texture = new ResourceLocation("emojicord", "textures/26d4.png");
+	public static final EmojiAtlasRegion loading_region = EmojiAtlasRegion.of(loading_texture);
+	public static final EmojiAtlasRegion error_region = EmojiAtlasRegion.of(error_texture);
 
+	// Downloads run on EmojiDownloadScheduler; this pool only reads and decodes, so keep it small
 	private static final @Nonnull
-	ExecutorService threadpool = Executors.newCachedThreadPool(
+	ExecutorService threadpool = Executors.newFixedThreadPool(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()-1)),
 			new ThreadFactoryBuilder().setNameFormat("emojicord-emoji-%d").setDaemon(true).build());
 
 	private final EmojiId id;
-	private boolean deleteOldTexture;
-	private SimpleTexture img;
-	private ResourceLocation resourceLocation;
+	private DownloadImageData img;
+	#if MC_12_LATER
+	private EmojiFontRenderer.EmojiGlyph glyph;
+	#endif
 
 	public EmojiObject(final EmojiId id) {
-		this.resourceLocation = loading_texture;
 		this.id = id;
 	}
 
 	private void checkLoad() {
+		final int size = EmojiAtlas.instance.getVariantSize();
+		if (this.img != null && this.img.size != size)
+			// The GUI scale changed; decode again at the matching size
+			unload();
 		if (this.img == null) {
-			this.img = new DownloadImageData(this.id.getCache(), this.id.getRemote(), loading_texture);
-			this.resourceLocation = this.id.getResourceLocation();
-			Compat.getMinecraft().getTextureManager().loadTexture(this.resourceLocation, this.img);
+			this.img = new DownloadImageData(this.id, this.id.getRemote(), size);
+			this.img.loadTexture();
 		}
 	}
 
-	public ResourceLocation getResourceLocation() {
-		return this.resourceLocation;
-	}
-
-	public ResourceLocation loadAndGetResourceLocation() {
+	public EmojiAtlasRegion loadAndGetRegion() {
 		checkLoad();
-		if (this.deleteOldTexture) {
-			this.img.deleteGlTexture();
-			this.deleteOldTexture = false;
-		}
-		return this.resourceLocation;
+		EmojiTextureResidency.instance.touch(this);
+		return this.img.getRegion();
 	}
 
-	public void delete() {
+	/**
+	 * Frees the atlas space of this emoji. It loads again the next time it is drawn.
+	 */
+	void unload() {
 		if (this.img != null) {
-			this.img.deleteGlTexture();
-			this.deleteOldTexture = false;
+			this.img.deleteRegions();
+			this.img = null;
 		}
+		#if MC_12_LATER
+		// Glyphs point at the freed regions, which the atlas may hand to another emoji
+		if (this.glyph != null)
+			this.glyph.invalidate();
+		#endif
 	}
 
-	public static class InfinityIterator<T> implements Iterator<T> {
-		private final Iterable<T> iterable;
-		private Iterator<T> iterator;
-
-		public InfinityIterator(final Iterable<T> iterable) {
-			this.iterable = iterable;
-			this.iterator = iterable.iterator();
-		}
-
-		@Override
-		public boolean hasNext() {
-			return this.iterator.hasNext();
-		}
+	public void delete() {
+		unload();
+	}
 
-		@Override
-		public T next() {
-			final T next = this.iterator.next();
-			if (!this.iterator.hasNext())
-				this.iterator = this.iterable.iterator();
-			return next;
-		}
+	#if MC_12_LATER
+	/**
+	 * The glyph handed to the font renderer for this emoji, reused across draws.
+	 */
+	public EmojiFontRenderer.EmojiGlyph getGlyph() {
+		if (this.glyph == null)
+			this.glyph = new EmojiFontRenderer.EmojiGlyph(this);
+		return this.glyph;
 	}
+	#endif
 
-	public class DownloadImageData extends SimpleTexture {
-		private final File cacheFile;
+	public class DownloadImageData implements EmojiUploadQueue.EmojiUpload {
+		private final EmojiId id;
 		private final String imageUrl;
-		private final ResourceLocation textureResourceLocation;
+		private final int size;
 
-		private CompletableFuture<byte[]> downloading;
+		private CompletableFuture<List<Pair<Integer, EmojiAtlasSprite>>> downloading;
+		private volatile boolean error;
 		private boolean textureUploaded;
+		private boolean deleted;
+		// Atlas space taken by the frames uploaded so far
+		private int bytes;
 
-		private byte[] rawData;
-		private BufferedImage imageData;
-		private List<Pair<Integer, BufferedImage>> animationData;
-
-		private List<Pair<Integer, SimpleTexture>> animation;
+		private volatile List<Pair<Integer, EmojiAtlasSprite>> animationData;
+		// Frames uploaded so far, turned into the animation once all of them are in the atlas
+		private final List<Pair<Integer, EmojiAtlasRegion>> uploaded = Lists.newArrayList();
 
-		private Timer timer = new Timer();
-		private Iterator<Pair<Integer, SimpleTexture>> animationIterator;
-		private Pair<Integer, SimpleTexture> current;
+		private EmojiAnimation animation;
 
-		public DownloadImageData(
-				final File cacheFileIn, final String imageUrlIn,
-				final ResourceLocation textureResourceLocation
-		) {
-			super(textureResourceLocation);
-			this.cacheFile = cacheFileIn;
+		public DownloadImageData(final EmojiId id, final String imageUrlIn, final int size) {
+			this.id = id;
 			this.imageUrl = imageUrlIn;
-			this.textureResourceLocation = textureResourceLocation;
-		}
-
-		private void checkTextureUploaded() {
-			if (!this.textureUploaded)
-				if (this.imageData != null && this.animationData != null) {
-					try {
-						deleteGlTexture();
-						CompatTexture.uploadTexture(super::getGlTextureId, this.imageData);
-						this.animation = this.animationData.stream().map(e -> {
-							final SimpleTexture t = new SimpleTexture(this.textureResourceLocation);
-							try {
-								CompatTexture.uploadTexture(t::getGlTextureId, e.getRight());
-							} catch (final IOException e1) {
-								throw new UncheckedIOException(e1);
-							}
-							return Pair.of(e.getLeft(), t);
-						}).collect(Collectors.toList());
-						this.animationIterator = new InfinityIterator<>(this.animation);
-					} catch (final IOException | UncheckedIOException e) {
-						Log.log.warn("Failed to load texture: ", e);
-					}
-					this.imageData = null;
-					this.animationData = null;
-					this.textureUploaded = true;
-				} else if (this.rawData != null) {
-					try {
-						deleteGlTexture();
-						CompatTexture.uploadTexture(super::getGlTextureId, new ByteArrayInputStream(this.rawData));
-					} catch (final IOException e) {
-						Log.log.warn("Failed to load texture: ", e);
-					}
-					this.rawData = null;
-					this.textureUploaded = true;
-				}
+			this.size = size;
 		}
 
 		@Override
-		public int getGlTextureId() {
-			checkTextureUploaded();
-			if (this.animationIterator != null && this.animationIterator.hasNext()) {
-				if (this.current == null)
-					this.current = this.animationIterator.next();
-				Timer.tick();
-				final int currentId = this.current.getRight().getGlTextureId();
-				final float t = this.timer.getTime() - this.current.getLeft() * 1e-3f;
-				if (t > 0) {
-					this.current = null;
-					this.timer.set(0);
-				}
-				return currentId;
+		public int uploadNext() {
+			final List<Pair<Integer, EmojiAtlasSprite>> animationData = this.animationData;
+			final Pair<Integer, EmojiAtlasSprite> frame = animationData.get(this.uploaded.size());
+			this.uploaded.add(Pair.of(frame.getLeft(), EmojiAtlas.instance.upload(frame.getRight())));
+			final int size = frame.getRight().pixels.remaining() * 4;
+			this.bytes += size;
+			EmojiTextureResidency.instance.add(size);
+			if (this.uploaded.size() == animationData.size()) {
+				this.animation = new EmojiAnimation(this.uploaded);
+				this.animationData = null;
+				this.textureUploaded = true;
 			}
-			return super.getGlTextureId();
+			return size;
 		}
 
 		@Override
-		public void loadTexture(final IResourceManager resourceManager) throws IOException {
+		public boolean isDone() {
+			return this.textureUploaded || this.deleted;
+		}
+
+		public EmojiAtlasRegion getRegion() {
+			if (this.error)
+				return error_region;
+			if (this.animation == null || this.animation.isEmpty())
+				return loading_region;
+			return this.animation.getFrame();
+		}
+
+		public void deleteRegions() {
+			this.deleted = true;
+			if (this.animation != null) {
+				this.animation.forEachFrame(EmojiAtlas.instance::free);
+				this.animation = null;
+			} else
+				// Still queued: release the frames that made it into the atlas
+				for (final Pair<Integer, EmojiAtlasRegion> frame : this.uploaded)
+					EmojiAtlas.instance.free(frame.getRight());
+			this.uploaded.clear();
+			this.animationData = null;
+			EmojiTextureResidency.instance.remove(this.bytes);
+			this.bytes = 0;
+		}
+
+		public void loadTexture() {
 			if (this.textureUploaded)
 				return;
-			if (this.textureLocation != null)
-				super.loadTexture(resourceManager);
 			if (this.downloading == null) {
-				CompletableFuture<byte[]> dataFuture;
-				if (this.cacheFile == null)
-					dataFuture = CompletableFuture.completedFuture(null);
+				final EmojiCache cache = EmojiCache.instance;
+				final File cached = cache.lookup(this.id);
+				CompletableFuture<List<Pair<Integer, EmojiAtlasSprite>>> framesFuture;
+				if (cached == null && cache.isBackedOff(this.id))
+					// Failed recently; show the error icon without hitting the server again
+					framesFuture = CompletableFuture.completedFuture(null);
 				else {
-					final CompletableFuture<File> cacheFuture = this.cacheFile.isFile()
-							? CompletableFuture.completedFuture(this.cacheFile)
-							: CompletableFuture.supplyAsync(downloadTextureFromServer(this.cacheFile), threadpool);
-					dataFuture = cacheFuture.thenApplyAsync(cacheFile -> {
+					final CompletableFuture<File> cacheFuture;
+					if (cached != null) {
+						cacheFuture = CompletableFuture.completedFuture(cached);
+						if (cache.needsRevalidation(this.id))
+							EmojiDownloadScheduler.instance.download(this.id, this.imageUrl, Priority.PREFETCH);
+					} else
+						cacheFuture = EmojiDownloadScheduler.instance.download(this.id, this.imageUrl, Priority.VISIBLE);
+					framesFuture = cacheFuture.thenApplyAsync(cacheFile -> {
 						try {
-							return IOUtils.toByteArray(FileUtils.openInputStream(cacheFile));
+							return readFrames(cacheFile);
 						} catch (final IOException ioexception) {
 							throw new UncheckedIOException(ioexception);
 						}
 					}, threadpool);
 				}
-				final CompletableFuture<byte[]> statusFuture = dataFuture.exceptionally(e -> {
+				final CompletableFuture<List<Pair<Integer, EmojiAtlasSprite>>> statusFuture = framesFuture.exceptionally(e -> {
 					Log.log.warn("Failed to load texture: ", e);
 					return null;
 				});
-				statusFuture.thenAcceptAsync(data -> {
-					if (data == null) {
-						EmojiObject.this.resourceLocation = EmojiObject.error_texture;
-						EmojiObject.this.deleteOldTexture = true;
-					} else {
-						final GifDecoder d = new GifDecoder();
-						if (d.read(new ByteArrayInputStream(data)) == GifDecoder.STATUS_OK) {
-							this.imageData = d.getImage();
-							this.animationData = IntStream.range(0, d.getFrameCount()).mapToObj(i -> Pair.of(d.getDelay(i), d.getFrame(i))).collect(Collectors.toList());
-						} else
-							this.rawData = data;
+				this.downloading = statusFuture;
+				statusFuture.thenAccept(frames -> {
+					if (frames == null || frames.isEmpty())
+						this.error = true;
+					else {
+						this.animationData = frames;
+						EmojiUploadQueue.instance.add(this);
 					}
-				}, threadpool);
+				});
 			}
 		}
 
-		protected Supplier<File> downloadTextureFromServer(final File cacheFile) {
-			return () -> {
-				CloseableHttpResponse response = null;
-				try {
-					final HttpUriRequest req = new HttpGet(DownloadImageData.this.imageUrl);
-					req.setHeaders(new Header[]{
-							new BasicHeader("User-Agent",
-									"Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/75.0.3770.80 Safari/537.36"),
-							new BasicHeader("Accept", "*/*"),
-							new BasicHeader("Accept-Encoding", ""),
-							new BasicHeader("Accept-Language", "ja,en-US;q=0.9,en;q=0.8"),
-					});
-					final HttpClientContext context = HttpClientContext.create();
-					response = Downloader.downloader.client.execute(req, context);
-					final HttpEntity entity = response.getEntity();
-
-					final int statusCode = response.getStatusLine().getStatusCode();
-					if (statusCode != HttpStatus.SC_OK)
-						throw new IOException("Invalid Status Code: " + statusCode);
-
-					FileUtils.copyInputStreamToFile(entity.getContent(),
-							DownloadImageData.this.cacheFile);
-					return cacheFile;
-				} catch (final IOException exception) {
-					throw new UncheckedIOException(exception);
-				} finally {
-					IOUtils.closeQuietly(response);
-				}
-			};
+		private List<Pair<Integer, EmojiAtlasSprite>> readFrames(final File cacheFile) throws IOException {
+			// Frames decoded on an earlier load are read straight from disk
+			final List<Pair<Integer, EmojiAtlasSprite>> stored = EmojiFrameCache.instance.load(this.id, this.size);
+			if (stored != null)
+				return stored;
+
+			final byte[] data = FileUtils.readFileToByteArray(cacheFile);
+			if (!EmojiCache.instance.verify(this.id, data))
+				throw new IOException("Corrupted cache file: " + cacheFile);
+			final List<Pair<Integer, EmojiAtlasSprite>> frames = decodeFrames(data);
+			EmojiFrameCache.instance.save(this.id, this.size, frames);
+			return frames;
 		}
+
+		private List<Pair<Integer, EmojiAtlasSprite>> decodeFrames(final byte[] data) throws IOException {
+			if (isGif(data)) {
+				final List<Pair<Integer, EmojiAtlasSprite>> frames = EmojiGifDecoder.decode(data, this.size);
+				if (frames != null)
+					return frames;
+			}
+			final BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
+			if (image == null)
+				throw new IOException("Unsupported image format");
+			return Lists.newArrayList(Pair.of(0, EmojiAtlas.prepare(image, this.size)));
+		}
+
+		private boolean isGif(final byte[] data) {
+			return data.length >= 4 && data[0] == 'G' && data[1] == 'I' && data[2] == 'F' && data[3] == '8';
+		}
+
 	}
 
 	public static class EmojiObjectCache {
@@ -285,7 +252,7 @@ public class EmojiObject {
 							//Log.log.info("deleted");
 							final EmojiObject nvalue = notification.getValue();
 							if (nvalue != null)
-								nvalue.delete();
+								EmojiTextureResidency.instance.release(nvalue);
 						})
 				.build(new CacheLoader<EmojiId, EmojiObject>() {
 					@Override
@@ -298,5 +265,14 @@ public class EmojiObject {
 		EmojiObject getEmojiObject(final @Nonnull EmojiId name) {
 			return this.EMOJI_ID_MAP.getUnchecked(name);
 		}
+
+		/**
+		 * Fetches the image into the disk cache ahead of time, behind any emoji currently on screen.
+		 */
+		public void prefetch(final @Nonnull EmojiId name) {
+			final EmojiCache cache = EmojiCache.instance;
+			if (cache.lookup(name) == null && !cache.isBackedOff(name))
+				EmojiDownloadScheduler.instance.download(name, name.getRemote(), Priority.PREFETCH);
+		}
 	}
 }
\ No newline at end of file
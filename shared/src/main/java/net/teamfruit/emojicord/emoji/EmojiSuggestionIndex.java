@@ -0,0 +1,89 @@
+package net.teamfruit.emojicord.emoji;
+
+import com.google.common.collect.Lists;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Sorted, lowercased emoji names for chat suggestions.
+ * Built once per dictionary reload and answers prefix queries with a binary search instead of scanning every name.
+ */
+public class EmojiSuggestionIndex {
+	private static volatile EmojiSuggestionIndex current;
+
+	private final StandardEmojiIdDictionary standard;
+	private final int discordVersion;
+	/**
+	 * "name:" in lowercase, so a query ending with the closing colon only matches the exact name
+	 */
+	private final String[] keys;
+	private final String[] names;
+
+	private EmojiSuggestionIndex(final StandardEmojiIdDictionary standard, final int discordVersion, final List<String> names) {
+		this.standard = standard;
+		this.discordVersion = discordVersion;
+		final String[][] entries = new String[names.size()][];
+		for (int i = 0; i<entries.length; i++) {
+			final String name = names.get(i);
+			entries[i] = new String[] { name.toLowerCase(Locale.ROOT)+":", name };
+		}
+		Arrays.sort(entries, Comparator.comparing((final String[] e) -> e[0]).thenComparing(e -> e[1]));
+		this.keys = new String[entries.length];
+		this.names = new String[entries.length];
+		for (int i = 0; i<entries.length; i++) {
+			this.keys[i] = entries[i][0];
+			this.names[i] = entries[i][1];
+		}
+	}
+
+	/**
+	 * @return the index of the current dictionaries, rebuilding it if either has been reloaded since
+	 */
+	public static @Nonnull EmojiSuggestionIndex get() {
+		final StandardEmojiIdDictionary standard = StandardEmojiIdDictionary.instance;
+		// One snapshot, so the names always belong to the version they are indexed under
+		final DiscordEmojiIdDictionary.Snapshot discord = DiscordEmojiIdDictionary.instance.getSnapshot();
+		final int discordVersion = discord.getVersion();
+		EmojiSuggestionIndex index = current;
+		if (index==null||index.standard!=standard||index.discordVersion!=discordVersion) {
+			final List<String> names = Lists.newArrayList(standard.nameDictionary.keySet());
+			names.addAll(discord.get().keySet());
+			current = index = new EmojiSuggestionIndex(standard, discordVersion, names);
+		}
+		return index;
+	}
+
+	public int size() {
+		return this.keys.length;
+	}
+
+	/**
+	 * @param prefix the text typed after the opening colon, in any case
+	 * @param limit the maximum number of names to return
+	 * @return the names starting with the prefix, in sorted order
+	 */
+	public @Nonnull List<String> search(final @Nonnull String prefix, final int limit) {
+		final String key = prefix.toLowerCase(Locale.ROOT);
+		final List<String> result = Lists.newArrayList();
+		for (int i = lowerBound(key); i<this.keys.length&&result.size()<limit&&this.keys[i].startsWith(key); i++)
+			result.add(this.names[i]);
+		return result;
+	}
+
+	private int lowerBound(final String key) {
+		int low = 0;
+		int high = this.keys.length;
+		while (low<high) {
+			final int mid = (low+high)>>>1;
+			if (this.keys[mid].compareTo(key)<0)
+				low = mid+1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+}
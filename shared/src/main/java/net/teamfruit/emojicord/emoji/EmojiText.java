@@ -15,10 +15,14 @@ import org.apache.commons.lang3.math.NumberUtils;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 
+import net.teamfruit.emojicord.util.Metrics;
+
 public class EmojiText {
 	public static final @Nonnull Function<Integer, String> placeHolderSupplier = e -> String.format("{%d}", e);
 	public static final @Nonnull Pattern placeHolderPattern = Pattern.compile("\\{(\\d+?)\\}");
 
+	private static final Metrics.Histogram parseTime = Metrics.instance.timer("text.parse");
+
 	public final @Nonnull String text;
 	public final @Nonnull ImmutableList<EmojiTextElement> emojis;
 
@@ -40,6 +44,7 @@ public class EmojiText {
 	}
 
 	public static EmojiText create(final String text, final EnumSet<ParseFlag> flags) {
+		final long start = System.nanoTime();
 		EmojiText emojiText = EmojiText.createUnparsed(text);
 		if (flags.contains(ParseFlag.ESCAPE))
 			emojiText = EmojiTextParser.escape(emojiText);
@@ -51,6 +56,7 @@ public class EmojiText {
 			emojiText = EmojiTextParser.encodeUtf(emojiText);
 		if (flags.contains(ParseFlag.PARSE))
 			emojiText = EmojiTextParser.parse(emojiText);
+		parseTime.record(System.nanoTime()-start);
 		return emojiText;
 	}
 
@@ -181,17 +187,80 @@ public class EmojiText {
 		}
 	}
 
+	public static class EmojiTextScanner {
+		public interface EmojiTextMatcher {
+			/**
+			 * @return the end index of the match starting at {@code start}, or -1 if none
+			 */
+			int match(String text, int start);
+		}
+
+		public interface EmojiTextTransformer {
+			@Nullable
+			EmojiTextElement transform(String g0);
+		}
+
+		/**
+		 * Single left-to-right scan, equivalent to {@link EmojiTextBuilder} without a regex.
+		 */
+		public static EmojiText apply(final EmojiText emojiText, final EmojiTextMatcher matcher, final EmojiTextTransformer transformer) {
+			final String text = emojiText.text;
+			final int length = text.length();
+			StringBuilder sb = null;
+			ImmutableList.Builder<EmojiTextElement> emojis = null;
+			int size = emojiText.emojis.size();
+			int last = 0;
+			for (int i = 0; i<length;) {
+				final int end = matcher.match(text, i);
+				if (end<=i) {
+					i++;
+					continue;
+				}
+				final EmojiTextElement element = transformer.transform(text.substring(i, end));
+				if (element!=null) {
+					if (sb==null) {
+						sb = new StringBuilder(length);
+						emojis = ImmutableList.<EmojiTextElement> builder().addAll(emojiText.emojis);
+					}
+					sb.append(text, last, i).append(placeHolderSupplier.apply(size++));
+					emojis.add(element);
+					last = end;
+				}
+				i = end;
+			}
+			if (sb==null)
+				return emojiText;
+			sb.append(text, last, length);
+			return new EmojiText(sb.toString(), emojis.build());
+		}
+	}
+
 	public static class EmojiTextParser {
-		static final @Nonnull Pattern colorPattern = Pattern.compile("(?i)\u00A7([0-9A-FK-OR])");
+		// \{(\d+?)\}|(?i)\u00A7([0-9A-FK-OR])
+		static final @Nonnull Pattern escapePattern = Pattern.compile("\\{(\\d+?)\\}|(?i)\u00A7([0-9A-FK-OR])");
 		// <a?\:(?:\w+?)\:([a-zA-Z0-9+/=]+?)>|\:([\w+-]+?(?:~\d+?)?)\:(?:\:skin-tone-(\d)\:)?
 		static final @Nonnull Pattern pattern = Pattern.compile("<a?\\:(\\w+?)\\:([a-zA-Z0-9+/=]+?)>|\\:([\\w+-]+?(?:~\\d+?)?)\\:(?:\\:skin-tone-(\\d)\\:)?");
 
+		static final @Nonnull EmojiTrie.EndPredicate shortAliasEnd = (text, end) -> end==text.length()||text.charAt(end)==' ';
+		static final @Nonnull EmojiTextScanner.EmojiTextMatcher shortAliasMatcher = (text, start) -> {
+			// (?<=^| )(?:aliases)(?= |$)
+			if (start>0&&text.charAt(start-1)!=' ')
+				return -1;
+			return StandardEmojiIdDictionary.instance.shortAliasTrie.longestMatch(text, start, shortAliasEnd);
+		};
+		static final @Nonnull EmojiTextScanner.EmojiTextMatcher utfMatcher = (text, start) -> {
+			// (?:surrogates)[\uD83C\uDFFB-\uD83C\uDFFF]?
+			final int end = StandardEmojiIdDictionary.instance.utfTrie.longestMatch(text, start);
+			if (end>=0&&end+1<text.length()&&text.charAt(end)=='\uD83C') {
+				final char tone = text.charAt(end+1);
+				if ('\uDFFB'<=tone&&tone<='\uDFFF')
+					return end+2;
+			}
+			return end;
+		};
+
 		public static EmojiText escape(EmojiText emojiText) {
-			emojiText = EmojiTextBuilder.builder(placeHolderPattern, emojiText).apply(matcher -> {
-				final String g0 = matcher.group(0);
-				return new EmojiTextElement(null, g0, g0, "");
-			});
-			emojiText = EmojiTextBuilder.builder(colorPattern, emojiText).apply(matcher -> {
+			emojiText = EmojiTextBuilder.builder(escapePattern, emojiText).apply(matcher -> {
 				final String g0 = matcher.group(0);
 				return new EmojiTextElement(null, g0, g0, "");
 			});
@@ -245,8 +314,7 @@ public class EmojiText {
 		}
 
 		public static EmojiText encodeAlias(EmojiText emojiText) {
-			emojiText = EmojiTextBuilder.builder(StandardEmojiIdDictionary.instance.shortAliasPattern, emojiText).apply(matcher -> {
-				final String g0 = matcher.group(0);
+			emojiText = EmojiTextScanner.apply(emojiText, shortAliasMatcher, g0 -> {
 				final EmojiId emojiId = EmojiId.StandardEmojiId.fromAlias(g0);
 				if (emojiId!=null)
 					return new EmojiTextElement(emojiId, g0, String.format(":%s:", emojiId.getCacheName()), String.format(":%s:", emojiId.getCacheName()));
@@ -256,8 +324,7 @@ public class EmojiText {
 		}
 
 		public static EmojiText encodeUtf(EmojiText emojiText) {
-			emojiText = EmojiTextBuilder.builder(StandardEmojiIdDictionary.instance.utfPattern, emojiText).apply(matcher -> {
-				final String g0 = matcher.group(0);
+			emojiText = EmojiTextScanner.apply(emojiText, utfMatcher, g0 -> {
 				final EmojiId emojiId = EmojiId.StandardEmojiId.fromUtf(g0);
 				if (emojiId!=null) {
 					final String id = String.format(":%s:", emojiId.getCacheName().replace(":", "::"));
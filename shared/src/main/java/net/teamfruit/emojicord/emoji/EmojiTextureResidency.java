@@ -0,0 +1,100 @@
+package net.teamfruit.emojicord.emoji;
+
+import net.teamfruit.emojicord.EmojicordConfig;
+import net.teamfruit.emojicord.emoji.EmojiAnimation.EmojiAnimationClock;
+import net.teamfruit.emojicord.util.Metrics;
+
+import javax.annotation.Nonnull;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Keeps the atlas memory held by emojis under the configured texture budget.
+ * Emojis are weighed by the bytes of the frames they have uploaded, and the ones drawn least recently are unloaded first.
+ * An unloaded emoji stays in {@link EmojiObject.EmojiObjectCache} and reloads from the frame cache when drawn again.
+ * All methods except {@link #release} must be called on the render thread.
+ */
+public class EmojiTextureResidency {
+	public static final EmojiTextureResidency instance = new EmojiTextureResidency();
+
+	// Access order: iteration starts at the emoji drawn least recently; values are the frame it was last drawn in
+	private final Map<EmojiObject, Long> resident = new LinkedHashMap<>(64, .75f, true);
+	private final Queue<EmojiObject> released = new ConcurrentLinkedQueue<>();
+
+	private long bytes;
+	private long evictedCount;
+
+	private EmojiTextureResidency() {
+		Metrics.instance.gauge("texture.bytes", this::getBytes);
+		Metrics.instance.gauge("texture.resident", this::getResidentCount);
+		Metrics.instance.gauge("texture.evicted", this::getEvictedCount);
+	}
+
+	/**
+	 * Marks the emoji as drawn in the current frame.
+	 */
+	void touch(final @Nonnull EmojiObject emoji) {
+		this.resident.put(emoji, EmojiAnimationClock.instance.getFrame());
+	}
+
+	void add(final int size) {
+		this.bytes += size;
+	}
+
+	void remove(final int size) {
+		this.bytes -= size;
+	}
+
+	/**
+	 * Hands over an emoji dropped from {@link EmojiObject.EmojiObjectCache}, so its texture is deleted on the render thread.
+	 * Safe to call from any thread.
+	 */
+	public void release(final @Nonnull EmojiObject emoji) {
+		this.released.add(emoji);
+	}
+
+	/**
+	 * Deletes released emojis, then unloads the least recently drawn ones until the footprint fits the budget.
+	 * Emojis drawn in the previous frame are kept even over budget, since they would only be loaded again right away.
+	 * Called once per frame, after the animation clock has advanced.
+	 */
+	public void update() {
+		EmojiObject emoji;
+		while ((emoji = this.released.poll())!=null) {
+			this.resident.remove(emoji);
+			emoji.delete();
+		}
+
+		final long budget = (EmojicordConfig.spec.isAvailable() ? EmojicordConfig.RENDER.textureBudget.get() : 64)*1024L*1024L;
+		if (this.bytes<=budget)
+			return;
+		final long frame = EmojiAnimationClock.instance.getFrame();
+		final Iterator<Map.Entry<EmojiObject, Long>> it = this.resident.entrySet().iterator();
+		while (this.bytes>budget&&it.hasNext()) {
+			final Map.Entry<EmojiObject, Long> entry = it.next();
+			if (entry.getValue()>=frame-1)
+				break;
+			it.remove();
+			entry.getKey().unload();
+			this.evictedCount++;
+		}
+	}
+
+	/**
+	 * @return the bytes of atlas space currently held by emojis
+	 */
+	public long getBytes() {
+		return this.bytes;
+	}
+
+	public int getResidentCount() {
+		return this.resident.size();
+	}
+
+	public long getEvictedCount() {
+		return this.evictedCount;
+	}
+}
@@ -0,0 +1,168 @@
+package net.teamfruit.emojicord.emoji;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Immutable character trie stored as flat arrays.
+ * Each node owns the contiguous edge range {@code [edgeStart[node], edgeStart[node+1])}, sorted by character.
+ */
+public class EmojiTrie {
+	public static final EmojiTrie EMPTY = builder().build();
+
+	private final int[] edgeStart;
+	private final char[] edgeChar;
+	private final int[] edgeTarget;
+	private final boolean[] terminal;
+
+	public EmojiTrie(final int[] edgeStart, final char[] edgeChar, final int[] edgeTarget, final boolean[] terminal) {
+		this.edgeStart = edgeStart;
+		this.edgeChar = edgeChar;
+		this.edgeTarget = edgeTarget;
+		this.terminal = terminal;
+	}
+
+	public interface EndPredicate {
+		boolean test(CharSequence text, int end);
+	}
+
+	private static final EndPredicate ANY_END = (text, end) -> true;
+
+	private int child(final int node, final char c) {
+		int low = this.edgeStart[node];
+		int high = this.edgeStart[node+1]-1;
+		while (low<=high) {
+			final int mid = (low+high)>>>1;
+			final char midChar = this.edgeChar[mid];
+			if (midChar<c)
+				low = mid+1;
+			else if (midChar>c)
+				high = mid-1;
+			else
+				return this.edgeTarget[mid];
+		}
+		return -1;
+	}
+
+	/**
+	 * @return whether any key starts with the character
+	 */
+	public boolean startsWith(final char c) {
+		return child(0, c)>=0;
+	}
+
+	/**
+	 * @return the end index of the longest key starting at {@code start}, or -1 if none
+	 */
+	public int longestMatch(final CharSequence text, final int start) {
+		return longestMatch(text, start, ANY_END);
+	}
+
+	/**
+	 * @return the end index of the longest key starting at {@code start} whose end is accepted by {@code accept}, or -1 if none
+	 */
+	public int longestMatch(final CharSequence text, final int start, final EndPredicate accept) {
+		int result = -1;
+		int node = 0;
+		final int length = text.length();
+		for (int i = start; i<length; i++) {
+			node = child(node, text.charAt(i));
+			if (node<0)
+				break;
+			if (this.terminal[node]&&accept.test(text, i+1))
+				result = i+1;
+		}
+		return result;
+	}
+
+	public int[] getEdgeStart() {
+		return this.edgeStart;
+	}
+
+	public char[] getEdgeChar() {
+		return this.edgeChar;
+	}
+
+	public int[] getEdgeTarget() {
+		return this.edgeTarget;
+	}
+
+	public boolean[] getTerminal() {
+		return this.terminal;
+	}
+
+	public static @Nonnull EmojiTrieBuilder builder() {
+		return new EmojiTrieBuilder();
+	}
+
+	public static class EmojiTrieBuilder {
+		private static class BuilderNode {
+			private final Map<Character, BuilderNode> children = new TreeMap<>();
+			private boolean terminal;
+			private int index;
+		}
+
+		private final BuilderNode root = new BuilderNode();
+		private int nodes = 1;
+		private int edges;
+
+		public EmojiTrieBuilder add(final String key) {
+			if (key==null||key.isEmpty())
+				return this;
+			BuilderNode node = this.root;
+			for (int i = 0; i<key.length(); i++) {
+				final char c = key.charAt(i);
+				BuilderNode next = node.children.get(c);
+				if (next==null) {
+					next = new BuilderNode();
+					node.children.put(c, next);
+					this.nodes++;
+					this.edges++;
+				}
+				node = next;
+			}
+			node.terminal = true;
+			return this;
+		}
+
+		public EmojiTrieBuilder addAll(final Collection<String> keys) {
+			for (final String key : keys)
+				add(key);
+			return this;
+		}
+
+		public EmojiTrie build() {
+			final int[] edgeStart = new int[this.nodes+1];
+			final char[] edgeChar = new char[this.edges];
+			final int[] edgeTarget = new int[this.edges];
+			final boolean[] terminal = new boolean[this.nodes];
+
+			// Breadth-first numbering keeps each node's edges contiguous
+			final Deque<BuilderNode> queue = new ArrayDeque<>();
+			int nextIndex = 1;
+			this.root.index = 0;
+			queue.add(this.root);
+			int edge = 0;
+			while (!queue.isEmpty()) {
+				final BuilderNode node = queue.poll();
+				edgeStart[node.index] = edge;
+				terminal[node.index] = node.terminal;
+				for (final Map.Entry<Character, BuilderNode> entry : node.children.entrySet()) {
+					final BuilderNode child = entry.getValue();
+					child.index = nextIndex++;
+					edgeChar[edge] = entry.getKey();
+					edgeTarget[edge] = child.index;
+					edge++;
+					queue.add(child);
+				}
+			}
+			edgeStart[this.nodes] = edge;
+			return new EmojiTrie(edgeStart, edgeChar, edgeTarget, terminal);
+		}
+	}
+}
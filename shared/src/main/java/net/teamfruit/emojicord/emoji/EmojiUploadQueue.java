@@ -0,0 +1,99 @@
+package net.teamfruit.emojicord.emoji;
+
+import net.teamfruit.emojicord.EmojicordConfig;
+import net.teamfruit.emojicord.util.Metrics;
+
+import javax.annotation.Nonnull;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frames decoded on worker threads wait here for their upload to the atlas.
+ * The render thread drains the queue once per frame within a byte and time budget, so a burst of new emojis is spread over several frames.
+ */
+public class EmojiUploadQueue {
+	public static final EmojiUploadQueue instance = new EmojiUploadQueue();
+
+	public interface EmojiUpload {
+		/**
+		 * Uploads the next frame. Called on the render thread.
+		 * @return the number of bytes uploaded
+		 */
+		int uploadNext();
+
+		/**
+		 * @return true once every frame is uploaded, or the upload is no longer wanted
+		 */
+		boolean isDone();
+	}
+
+	private final Queue<EmojiUpload> queue = new ConcurrentLinkedQueue<>();
+
+	private long uploadedFrames;
+	private long uploadedBytes;
+	private long deferredFrames;
+
+	private final Metrics.FrameCounter framesPerFrame = Metrics.instance.frameCounter("upload.frames");
+	private final Metrics.FrameCounter bytesPerFrame = Metrics.instance.frameCounter("upload.bytes");
+
+	private EmojiUploadQueue() {
+		Metrics.instance.gauge("upload.queued", this::getQueueDepth);
+		Metrics.instance.gauge("upload.deferred", this::getDeferredFrames);
+	}
+
+	/**
+	 * Safe to call from any thread.
+	 */
+	public void add(final @Nonnull EmojiUpload upload) {
+		this.queue.add(upload);
+	}
+
+	/**
+	 * Uploads queued frames until the budget of this frame is spent.
+	 * At least one frame is uploaded per call, so a frame larger than the budget still goes through.
+	 */
+	public void drain() {
+		if (this.queue.isEmpty())
+			return;
+		final long budgetBytes = EmojicordConfig.spec.isAvailable() ? EmojicordConfig.RENDER.uploadBudget.get()*1024L : 512*1024L;
+		final long budgetNanos = TimeUnit.MILLISECONDS.toNanos(EmojicordConfig.spec.isAvailable() ? EmojicordConfig.RENDER.uploadTime.get() : 2);
+		final long start = System.nanoTime();
+		long bytes = 0;
+		EmojiUpload upload;
+		while ((upload = this.queue.peek())!=null) {
+			if (upload.isDone()) {
+				this.queue.poll();
+				continue;
+			}
+			if (bytes>0&&(bytes>=budgetBytes||System.nanoTime()-start>=budgetNanos)) {
+				this.deferredFrames++;
+				break;
+			}
+			bytes += upload.uploadNext();
+			this.uploadedFrames++;
+			this.framesPerFrame.increment();
+		}
+		this.uploadedBytes += bytes;
+		this.bytesPerFrame.add(bytes);
+	}
+
+	public int getQueueDepth() {
+		return this.queue.size();
+	}
+
+	public long getUploadedFrames() {
+		return this.uploadedFrames;
+	}
+
+	public long getUploadedBytes() {
+		return this.uploadedBytes;
+	}
+
+	/**
+	 * @return how many times the budget ran out with frames still waiting
+	 */
+	public long getDeferredFrames() {
+		return this.deferredFrames;
+	}
+}
@@ -1,55 +1,130 @@
 package net.teamfruit.emojicord.emoji;
 
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.teamfruit.emojicord.Locations;
+import net.teamfruit.emojicord.Log;
 import net.teamfruit.emojicord.Reference;
+import net.teamfruit.emojicord.emoji.EndpointCache.Fetched;
 import net.teamfruit.emojicord.emoji.Models.EmojiGateway;
-import net.teamfruit.emojicord.emoji.Models.EmojiStandard;
-import net.teamfruit.emojicord.emoji.Models.EmojiStandardGroup;
 import net.teamfruit.emojicord.emoji.Models.EmojiStandardList;
 import net.teamfruit.emojicord.emoji.Models.EmojiStandardPicker;
 import net.teamfruit.emojicord.emoji.Models.EmojiStandardPickerCategory;
-import net.teamfruit.emojicord.emoji.StandardEmojiIdDictionary.StandardEmojiIdDictionaryBuilder;
 import net.teamfruit.emojicord.emoji.StandardEmojiIdPicker.StandardEmojiIdPickerBuilder;
-import net.teamfruit.emojicord.util.DataUtils;
+import net.teamfruit.emojicord.util.Downloader;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class Endpoint {
-	public static EmojiGateway EMOJI_API = new EmojiGateway();
+	public static volatile EmojiGateway EMOJI_API = new EmojiGateway();
+
+	private static final File snapshotFile = new File(Locations.instance.getEndpointDirectory(), "standard.bin");
+	private static volatile String standardHash;
+
+	private static final ExecutorService executor = Executors.newFixedThreadPool(Downloader.maxConnectionsPerRoute,
+			new ThreadFactoryBuilder().setNameFormat("emojicord-endpoint-%d").setDaemon(true).build());
+
+	/**
+	 * Serves the lists saved by the last run right away, then revalidates the gateway and every list in parallel,
+	 * swapping in new dictionaries if anything changed.
+	 * If revalidation fails, the dictionaries installed last stay in use.
+	 * @return completes with whether the gateway could be reached and the lists revalidated
+	 */
+	public static CompletableFuture<Boolean> loadAll() {
+		final boolean cached = loadSnapshot();
+		return CompletableFuture.supplyAsync(() -> EndpointCache.instance.fetch(Reference.EMOJI_GATEWAY, EmojiGateway.class, "Emojicord API"), executor)
+				.thenCompose(gateway -> {
+					if (gateway==null)
+						return CompletableFuture.completedFuture(false);
+					EMOJI_API = gateway.data;
+					final List<CompletableFuture<Fetched<EmojiStandardList>>> emojis = fetchAll(gateway.data.emojis, EmojiStandardList.class, "Standard Emojis");
+					final List<CompletableFuture<Fetched<EmojiStandardPicker>>> picker = fetchAll(gateway.data.picker, EmojiStandardPicker.class, "Standard Emoji Picker");
+					return CompletableFuture.allOf(Stream.concat(emojis.stream(), picker.stream()).toArray(CompletableFuture[]::new))
+							.thenApply(e -> {
+								final boolean changed = gateway.changed
+										||emojis.stream().map(CompletableFuture::join).anyMatch(f -> f!=null&&f.changed)
+										||picker.stream().map(CompletableFuture::join).anyMatch(f -> f!=null&&f.changed);
+								if (changed||!cached) {
+									loadStandardEmojis(EndpointCache.instance.getHash(gateway.data.emojis), () -> joinAll(emojis, gateway.data.emojis, EmojiStandardList.class));
+									loadStandardPicker(joinAll(picker, gateway.data.picker, EmojiStandardPicker.class));
+									DiscordEmojiIdDictionary.instance.reindex();
+								}
+								return true;
+							});
+				})
+				.exceptionally(e -> {
+					Log.log.warn("Failed to revalidate the emoji lists, keeping the ones already loaded: ", e);
+					// A dictionary may have been swapped in before the failure, so bring the Discord indexes in line with whatever is installed
+					DiscordEmojiIdDictionary.instance.reindex();
+					return false;
+				});
+	}
 
-	public static boolean loadGateway() {
-		final EmojiGateway data = DataUtils.loadUrl(Reference.EMOJI_GATEWAY, EmojiGateway.class, "Emojicord API");
-		if (data!=null) {
-			EMOJI_API = data;
-			return true;
+	/**
+	 * @return true if the last known good lists were found on disk
+	 */
+	private static boolean loadSnapshot() {
+		final EmojiGateway gateway = EndpointCache.instance.load(Reference.EMOJI_GATEWAY, EmojiGateway.class);
+		if (gateway==null)
+			return false;
+		EMOJI_API = gateway;
+		loadStandardEmojis(EndpointCache.instance.getHash(gateway.emojis),
+				() -> gateway.emojis.stream().map(url -> EndpointCache.instance.load(url, EmojiStandardList.class)).collect(Collectors.toList()));
+		loadStandardPicker(gateway.picker.stream().map(url -> EndpointCache.instance.load(url, EmojiStandardPicker.class)).collect(Collectors.toList()));
+		DiscordEmojiIdDictionary.instance.reindex();
+		return true;
+	}
+
+	private static <T> List<CompletableFuture<Fetched<T>>> fetchAll(final List<String> urls, final Class<T> clazz, final String description) {
+		return urls.stream()
+				.map(url -> CompletableFuture.supplyAsync(() -> EndpointCache.instance.fetch(url, clazz, description), executor))
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * A list that failed to load falls back to its copy on disk.
+	 */
+	private static <T> List<T> joinAll(final List<CompletableFuture<Fetched<T>>> futures, final List<String> urls, final Class<T> clazz) {
+		final List<T> result = Lists.newArrayList();
+		for (int i = 0; i<futures.size(); i++) {
+			final Fetched<T> fetched = futures.get(i).join();
+			result.add(fetched!=null ? fetched.data : EndpointCache.instance.load(urls.get(i), clazz));
 		}
-		return false;
+		return result;
 	}
 
-	public static void loadStandardEmojis() {
-		final StandardEmojiIdDictionaryBuilder builder = new StandardEmojiIdDictionaryBuilder();
-		for (final String emojiUrls : EMOJI_API.emojis) {
-			final EmojiStandardList emojiList = DataUtils.loadUrl(emojiUrls, EmojiStandardList.class,
-					"Standard Emojis");
-			if (emojiList!=null)
-				for (final EmojiStandardGroup emojiGroup : emojiList.groups)
-					for (final EmojiStandard emoji : emojiGroup.emojis) {
-						final EmojiId id = new EmojiId.StandardEmojiId(emojiGroup.location+emoji.location, emoji.name);
-						builder.putName(emoji.name, id);
-						builder.putUtf(emoji.surrogates, id);
-						for (final String string : emoji.strings)
-							builder.putAlias(string, id);
-					}
+	/**
+	 * Installs the dictionary for the given lists, taken from the binary snapshot when it matches their hash.
+	 * @param hash the hash of the lists from {@link EndpointCache#getHash(List)}, or null if they are incomplete
+	 * @param emojiLists parsed only when the snapshot cannot be used
+	 */
+	public static void loadStandardEmojis(final @Nullable String hash, final Supplier<List<EmojiStandardList>> emojiLists) {
+		if (hash!=null&&hash.equals(standardHash))
+			return;
+		StandardEmojiIdDictionary dictionary = hash!=null ? StandardEmojiIdSnapshot.load(snapshotFile, hash) : null;
+		if (dictionary==null) {
+			dictionary = StandardEmojiIdDictionary.fromLists(emojiLists.get());
+			if (hash!=null)
+				StandardEmojiIdSnapshot.save(snapshotFile, hash, dictionary);
 		}
-		StandardEmojiIdDictionary.instance = builder.build();
+		StandardEmojiIdDictionary.instance = dictionary;
+		standardHash = hash;
 	}
 
-	public static void loadStandardPicker() {
+	public static void loadStandardPicker(final List<EmojiStandardPicker> emojiPickers) {
 		final StandardEmojiIdPickerBuilder builder = new StandardEmojiIdPickerBuilder();
-		for (final String emojiUrls : EMOJI_API.picker) {
-			final EmojiStandardPicker emojiPicker = DataUtils.loadUrl(emojiUrls, EmojiStandardPicker.class,
-					"Standard Emoji Picker");
+		for (final EmojiStandardPicker emojiPicker : emojiPickers)
 			if (emojiPicker!=null)
 				for (final EmojiStandardPickerCategory category : emojiPicker.category)
 					builder.addGroup(category.name, category.emojis);
-		}
 		StandardEmojiIdPicker.instance = builder.build();
 	}
 }
@@ -0,0 +1,183 @@
+package net.teamfruit.emojicord.emoji;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import net.teamfruit.emojicord.Locations;
+import net.teamfruit.emojicord.Log;
+import net.teamfruit.emojicord.emoji.Models.EndpointCacheEntry;
+import net.teamfruit.emojicord.emoji.Models.EndpointCacheIndex;
+import net.teamfruit.emojicord.util.DataUtils;
+import net.teamfruit.emojicord.util.Downloader;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.message.BasicHeader;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Last known good copy of each endpoint list, kept under {@link Locations#getEndpointDirectory()}.
+ * Lists are revalidated with conditional requests, and a response replaces the copy on disk only once it parses.
+ */
+public class EndpointCache {
+	public static final EndpointCache instance = new EndpointCache();
+
+	private final File directory = Locations.instance.getEndpointDirectory();
+	private final File indexFile = new File(this.directory, "index.json");
+
+	private final Map<String, EndpointCacheEntry> entries = new ConcurrentHashMap<>();
+
+	private EndpointCache() {
+		final EndpointCacheIndex index = DataUtils.loadFileIfExists(this.indexFile, EndpointCacheIndex.class, "Endpoint Cache Index");
+		if (index!=null&&index.entries!=null)
+			this.entries.putAll(index.entries);
+	}
+
+	public static class Fetched<T> {
+		public final @Nonnull T data;
+		/**
+		 * false if the server answered 304 and the data came from disk
+		 */
+		public final boolean changed;
+
+		private Fetched(final @Nonnull T data, final boolean changed) {
+			this.data = data;
+			this.changed = changed;
+		}
+	}
+
+	private static String getFileName(final String url) {
+		return Hashing.sha1().hashString(url, Charsets.UTF_8).toString()+".json";
+	}
+
+	/**
+	 * @return the list stored by the last successful fetch, or null
+	 */
+	public @Nullable <T> T load(final @Nonnull String url, final @Nonnull Class<T> clazz) {
+		final EndpointCacheEntry entry = this.entries.get(url);
+		if (entry==null||entry.file==null)
+			return null;
+		return DataUtils.loadFileIfExists(new File(this.directory, entry.file), clazz, "Endpoint Cache");
+	}
+
+	/**
+	 * @return the SHA-1 of the copy on disk, or null if there is none
+	 */
+	public @Nullable String getHash(final @Nonnull String url) {
+		final EndpointCacheEntry entry = this.entries.get(url);
+		return entry!=null ? entry.sha1 : null;
+	}
+
+	/**
+	 * @return a hash over the copies of all the lists, or null if any of them is missing
+	 */
+	public @Nullable String getHash(final @Nonnull List<String> urls) {
+		final Hasher hasher = Hashing.sha1().newHasher();
+		for (final String url : urls) {
+			final String hash = getHash(url);
+			if (hash==null)
+				return null;
+			hasher.putString(url, Charsets.UTF_8).putString(hash, Charsets.UTF_8);
+		}
+		return hasher.hash().toString();
+	}
+
+	/**
+	 * Requests the list, sending the validators of the copy on disk.
+	 * @return the fresh or revalidated list, or null if the request failed
+	 */
+	public @Nullable <T> Fetched<T> fetch(final @Nonnull String url, final @Nonnull Class<T> clazz, final @Nullable String description) {
+		final EndpointCacheEntry entry = this.entries.get(url);
+		final T cached = entry!=null ? load(url, clazz) : null;
+		CloseableHttpResponse response = null;
+		try {
+			final HttpUriRequest req = new HttpGet(url);
+			final List<Header> headers = Lists.newArrayList();
+			if (cached!=null) {
+				if (entry.etag!=null)
+					headers.add(new BasicHeader(HttpHeaders.IF_NONE_MATCH, entry.etag));
+				if (entry.lastModified!=null)
+					headers.add(new BasicHeader(HttpHeaders.IF_MODIFIED_SINCE, entry.lastModified));
+			}
+			req.setHeaders(headers.toArray(new Header[0]));
+			final HttpClientContext context = HttpClientContext.create();
+			response = Downloader.downloader.client.execute(req, context);
+			final HttpEntity entity = response.getEntity();
+
+			final int statusCode = response.getStatusLine().getStatusCode();
+			if (statusCode==HttpStatus.SC_NOT_MODIFIED&&cached!=null) {
+				entry.validated = System.currentTimeMillis();
+				save();
+				return new Fetched<>(cached, false);
+			}
+			if (statusCode!=HttpStatus.SC_OK||entity==null)
+				throw new IOException("Invalid status code: "+statusCode);
+
+			final byte[] body = IOUtils.toByteArray(entity.getContent());
+			final T data = DataUtils.loadStream(new ByteArrayInputStream(body), clazz, description);
+			if (data==null)
+				return null;
+
+			final Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+			final Header lastModified = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+			store(url, body, etag!=null ? etag.getValue() : null, lastModified!=null ? lastModified.getValue() : null);
+			return new Fetched<>(data, true);
+		} catch (final IOException e) {
+			if (description!=null)
+				Log.log.warn("Failed to load "+description+": ", e);
+		} finally {
+			IOUtils.closeQuietly(response);
+		}
+		return null;
+	}
+
+	private void store(final String url, final byte[] body, final @Nullable String etag, final @Nullable String lastModified) throws IOException {
+		final String name = getFileName(url);
+		final File file = new File(this.directory, name);
+		FileUtils.forceMkdir(this.directory);
+		final File temp = File.createTempFile(name, ".tmp", this.directory);
+		try {
+			FileUtils.writeByteArrayToFile(temp, body);
+			EmojiCache.move(temp, file);
+		} finally {
+			FileUtils.deleteQuietly(temp);
+		}
+
+		final EndpointCacheEntry entry = new EndpointCacheEntry();
+		entry.file = name;
+		entry.sha1 = Hashing.sha1().hashBytes(body).toString();
+		entry.etag = etag;
+		entry.lastModified = lastModified;
+		entry.validated = System.currentTimeMillis();
+		this.entries.put(url, entry);
+		save();
+	}
+
+	private synchronized void save() {
+		final EndpointCacheIndex index = new EndpointCacheIndex();
+		index.entries.putAll(this.entries);
+		final File temp = new File(this.directory, this.indexFile.getName()+".tmp");
+		if (DataUtils.saveFile(temp, EndpointCacheIndex.class, index, "Endpoint Cache Index"))
+			try {
+				EmojiCache.move(temp, this.indexFile);
+			} catch (final IOException e) {
+				Log.log.warn("Failed to save Endpoint Cache Index: ", e);
+			}
+	}
+}
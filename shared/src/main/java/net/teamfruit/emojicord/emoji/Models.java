@@ -1,8 +1,10 @@
 package net.teamfruit.emojicord.emoji;
 
 import java.util.List;
+import java.util.Map;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 public class Models {
 	public static class EmojiGateway {
@@ -72,4 +74,33 @@ public class Models {
 	public static class EmojiStandardPicker {
 		public List<EmojiStandardPickerCategory> category;
 	}
+
+	public static class EmojiCacheEntry {
+		public long size;
+		public long decodedSize;
+		public String sha1;
+		public String etag;
+		public String lastModified;
+		public long validated;
+		public long lastAccess;
+		public int failures;
+		public int lastStatus;
+		public long retryAfter;
+	}
+
+	public static class EmojiCacheIndex {
+		public Map<String, EmojiCacheEntry> entries = Maps.newHashMap();
+	}
+
+	public static class EndpointCacheEntry {
+		public String file;
+		public String sha1;
+		public String etag;
+		public String lastModified;
+		public long validated;
+	}
+
+	public static class EndpointCacheIndex {
+		public Map<String, EndpointCacheEntry> entries = Maps.newHashMap();
+	}
 }
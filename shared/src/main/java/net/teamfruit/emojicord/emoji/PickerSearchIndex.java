@@ -0,0 +1,270 @@
+package net.teamfruit.emojicord.emoji;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.annotation.Nonnull;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Search over the names and aliases of every picker item, built once per dictionary reload.
+ * Terms are looked up through bigram postings, or a sorted term table for single characters,
+ * and ranked exact, prefix, word prefix, substring, then fuzzy, with frequently used emojis first within a rank.
+ */
+public class PickerSearchIndex {
+	public static final int EXACT = 5;
+	public static final int PREFIX = 4;
+	public static final int WORD_PREFIX = 3;
+	public static final int SUBSTRING = 2;
+	public static final int FUZZY = 1;
+
+	private static volatile PickerSearchIndex current;
+
+	private final StandardEmojiIdPicker standard;
+	private final List<PickerGroup> discord;
+
+	private final PickerItem[] items;
+	private final String[] terms;
+	private final int[] termItems;
+	private final int[] sortedTerms;
+	private final Map<String, int[]> bigrams;
+
+	private PickerSearchIndex(final StandardEmojiIdPicker standard, final List<PickerGroup> discord, final List<PickerGroup> groups) {
+		this.standard = standard;
+		this.discord = discord;
+
+		final List<PickerItem> items = Lists.newArrayList();
+		final List<String> terms = Lists.newArrayList();
+		final Postings termItems = new Postings();
+		final Map<String, Postings> bigrams = Maps.newHashMap();
+		for (final PickerGroup group : groups)
+			for (final PickerItem item : group.items) {
+				if (item==null)
+					continue;
+				final Set<String> itemTerms = new LinkedHashSet<>();
+				itemTerms.add(normalize(item.name));
+				for (final String alias : item.alias)
+					itemTerms.add(normalize(alias));
+				for (final String term : itemTerms) {
+					if (term.isEmpty())
+						continue;
+					final int termId = terms.size();
+					terms.add(term);
+					termItems.add(items.size());
+					for (int i = 0; i+2<=term.length(); i++)
+						bigrams.computeIfAbsent(term.substring(i, i+2), k -> new Postings()).addDistinct(termId);
+				}
+				items.add(item);
+			}
+
+		this.items = items.toArray(new PickerItem[0]);
+		this.terms = terms.toArray(new String[0]);
+		this.termItems = termItems.toArray();
+		this.sortedTerms = new int[this.terms.length];
+		final Integer[] order = new Integer[this.terms.length];
+		for (int i = 0; i<order.length; i++)
+			order[i] = i;
+		Arrays.sort(order, (a, b) -> this.terms[a].compareTo(this.terms[b]));
+		for (int i = 0; i<order.length; i++)
+			this.sortedTerms[i] = order[i];
+		this.bigrams = Maps.newHashMapWithExpectedSize(bigrams.size());
+		bigrams.forEach((k, v) -> this.bigrams.put(k, v.toArray()));
+	}
+
+	/**
+	 * @return the index of the current picker groups, rebuilding it if the dictionaries have been reloaded since
+	 */
+	public static @Nonnull PickerSearchIndex get() {
+		final StandardEmojiIdPicker standard = StandardEmojiIdPicker.instance;
+		final List<PickerGroup> discord = DiscordEmojiIdDictionary.instance.getSnapshot().getPickerGroups();
+		PickerSearchIndex index = current;
+		if (index==null||index.standard!=standard||index.discord!=discord) {
+			final List<PickerGroup> groups = Lists.newArrayList(discord);
+			groups.addAll(standard.categories);
+			current = index = new PickerSearchIndex(standard, discord, groups);
+		}
+		return index;
+	}
+
+	private static String normalize(final String text) {
+		return StringUtils.strip(text, ":").toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * @return the matching items, best first. Items are resolved from the ranking as the list is read.
+	 */
+	public @Nonnull List<PickerItem> search(final @Nonnull String text) {
+		final String query = normalize(text);
+		if (query.isEmpty())
+			return Lists.newArrayList();
+
+		final Map<EmojiId, Integer> usage = EmojiFrequently.instance.getUsage();
+		final long[] best = new long[this.items.length];
+		final Postings matched = new Postings();
+
+		if (query.length()==1) {
+			for (int i = lowerBound(query); i<this.sortedTerms.length&&this.terms[this.sortedTerms[i]].startsWith(query); i++)
+				rank(this.sortedTerms[i], query.equals(this.terms[this.sortedTerms[i]]) ? EXACT : PREFIX, usage, best, matched);
+		} else {
+			// Every bigram of a substring match is present, a fuzzy match may miss up to three around each edit
+			final Set<String> grams = new LinkedHashSet<>();
+			for (int i = 0; i+2<=query.length(); i++)
+				grams.add(query.substring(i, i+2));
+			final int maxDistance = query.length()<3 ? 0 : query.length()<=5 ? 1 : 2;
+			final int threshold = Math.max(1, grams.size()-maxDistance*3);
+
+			final int[] counts = new int[this.terms.length];
+			final Postings touched = new Postings();
+			for (final String gram : grams) {
+				final int[] postings = this.bigrams.get(gram);
+				if (postings!=null)
+					for (final int termId : postings)
+						if (counts[termId]++==0)
+							touched.add(termId);
+			}
+			for (int i = 0; i<touched.size; i++) {
+				final int termId = touched.ids[i];
+				if (counts[termId]<threshold)
+					continue;
+				int tier = match(this.terms[termId], query);
+				if (tier==0&&maxDistance>0&&prefixDistance(query, this.terms[termId], maxDistance)<=maxDistance)
+					tier = FUZZY;
+				if (tier>0)
+					rank(termId, tier, usage, best, matched);
+			}
+		}
+
+		final long[] keys = new long[matched.size];
+		for (int i = 0; i<keys.length; i++)
+			keys[i] = best[matched.ids[i]];
+		Arrays.sort(keys);
+		return new SearchResult(this.items, keys);
+	}
+
+	private void rank(final int termId, final int tier, final Map<EmojiId, Integer> usage, final long[] best, final Postings matched) {
+		final int itemIndex = this.termItems[termId];
+		final Integer used = usage.get(this.items[itemIndex].id);
+		final long key = (long) tier<<56
+				|(long) Math.min(used!=null ? used : 0, 0xFF)<<48
+				|(long) (0xFF-Math.min(this.terms[termId].length(), 0xFF))<<40
+				|0xFFFFFFFFL-itemIndex;
+		if (best[itemIndex]==0)
+			matched.add(itemIndex);
+		if (key>best[itemIndex])
+			best[itemIndex] = key;
+	}
+
+	static int match(final String term, final String query) {
+		if (term.equals(query))
+			return EXACT;
+		if (term.startsWith(query))
+			return PREFIX;
+		int index = term.indexOf(query);
+		if (index<0)
+			return 0;
+		for (; index>0; index = term.indexOf(query, index+1)) {
+			final char c = term.charAt(index-1);
+			if (c=='_'||c=='-')
+				return WORD_PREFIX;
+		}
+		return SUBSTRING;
+	}
+
+	/**
+	 * @return the smallest edit distance, counting adjacent transpositions, between the query and any prefix of the term
+	 */
+	static int prefixDistance(final String query, final String term, final int maxDistance) {
+		final int n = query.length();
+		final int m = Math.min(term.length(), n+maxDistance);
+		int[] prev2 = new int[m+1];
+		int[] prev = new int[m+1];
+		int[] row = new int[m+1];
+		for (int j = 0; j<=m; j++)
+			prev[j] = j;
+		for (int i = 1; i<=n; i++) {
+			row[0] = i;
+			for (int j = 1; j<=m; j++) {
+				final int cost = query.charAt(i-1)==term.charAt(j-1) ? 0 : 1;
+				int d = Math.min(Math.min(prev[j]+1, row[j-1]+1), prev[j-1]+cost);
+				if (i>1&&j>1&&query.charAt(i-1)==term.charAt(j-2)&&query.charAt(i-2)==term.charAt(j-1))
+					d = Math.min(d, prev2[j-2]+1);
+				row[j] = d;
+			}
+			final int[] swap = prev2;
+			prev2 = prev;
+			prev = row;
+			row = swap;
+		}
+		int min = Integer.MAX_VALUE;
+		for (int j = 0; j<=m; j++)
+			min = Math.min(min, prev[j]);
+		return min;
+	}
+
+	private int lowerBound(final String key) {
+		int low = 0;
+		int high = this.sortedTerms.length;
+		while (low<high) {
+			final int mid = (low+high)>>>1;
+			if (this.terms[this.sortedTerms[mid]].compareTo(key)<0)
+				low = mid+1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	/**
+	 * Ranking keys sorted ascending, read from the end.
+	 */
+	private static class SearchResult extends AbstractList<PickerItem> {
+		private final PickerItem[] items;
+		private final long[] keys;
+
+		private SearchResult(final PickerItem[] items, final long[] keys) {
+			this.items = items;
+			this.keys = keys;
+		}
+
+		@Override
+		public PickerItem get(final int index) {
+			final long key = this.keys[this.keys.length-1-index];
+			return this.items[(int) (0xFFFFFFFFL-(key&0xFFFFFFFFL))];
+		}
+
+		@Override
+		public int size() {
+			return this.keys.length;
+		}
+	}
+
+	private static class Postings {
+		private int[] ids = new int[4];
+		private int size;
+
+		/**
+		 * Skips a term seen twice in a row, which is how a repeated bigram within one term arrives.
+		 */
+		private void addDistinct(final int id) {
+			if (this.size==0||this.ids[this.size-1]!=id)
+				add(id);
+		}
+
+		private void add(final int id) {
+			if (this.size==this.ids.length)
+				this.ids = Arrays.copyOf(this.ids, this.size*2);
+			this.ids[this.size++] = id;
+		}
+
+		private int[] toArray() {
+			return Arrays.copyOf(this.ids, this.size);
+		}
+	}
+}
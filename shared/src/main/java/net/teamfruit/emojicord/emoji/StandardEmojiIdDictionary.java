@@ -10,25 +10,46 @@ import java.util.stream.Collectors;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
+import net.teamfruit.emojicord.emoji.Models.EmojiStandard;
+import net.teamfruit.emojicord.emoji.Models.EmojiStandardGroup;
+import net.teamfruit.emojicord.emoji.Models.EmojiStandardList;
+
 public class StandardEmojiIdDictionary {
-	public static StandardEmojiIdDictionary instance = new StandardEmojiIdDictionaryBuilder().build();
+	public static volatile StandardEmojiIdDictionary instance = new StandardEmojiIdDictionaryBuilder().build();
 
 	public final ImmutableMap<String, EmojiId> nameDictionary;
 	public final ImmutableMap<String, EmojiId> aliasDictionary;
 	public final ImmutableMap<String, EmojiId> utfDictionary;
-	public final Pattern shortAliasPattern;
-	public final Pattern utfPattern;
+	public final EmojiTrie shortAliasTrie;
+	public final EmojiTrie utfTrie;
 
-	public StandardEmojiIdDictionary(final ImmutableMap<String, EmojiId> nameDictionary, final ImmutableMap<String, EmojiId> aliasDictionary, final ImmutableMap<String, EmojiId> utfDictionary, final Pattern shortAliasPattern, final Pattern utfPattern) {
+	public StandardEmojiIdDictionary(final ImmutableMap<String, EmojiId> nameDictionary, final ImmutableMap<String, EmojiId> aliasDictionary, final ImmutableMap<String, EmojiId> utfDictionary, final EmojiTrie shortAliasTrie, final EmojiTrie utfTrie) {
 		this.nameDictionary = nameDictionary;
 		this.aliasDictionary = aliasDictionary;
 		this.utfDictionary = utfDictionary;
-		this.shortAliasPattern = shortAliasPattern;
-		this.utfPattern = utfPattern;
+		this.shortAliasTrie = shortAliasTrie;
+		this.utfTrie = utfTrie;
+	}
+
+	/**
+	 * Builds the dictionary from the downloaded standard emoji lists. Shared by Endpoint and the benchmarks.
+	 */
+	public static StandardEmojiIdDictionary fromLists(final List<EmojiStandardList> emojiLists) {
+		final StandardEmojiIdDictionaryBuilder builder = new StandardEmojiIdDictionaryBuilder();
+		for (final EmojiStandardList emojiList : emojiLists)
+			if (emojiList!=null)
+				for (final EmojiStandardGroup emojiGroup : emojiList.groups)
+					for (final EmojiStandard emoji : emojiGroup.emojis) {
+						final EmojiId id = EmojiId.StandardEmojiId.of(emojiGroup.location+emoji.location, emoji.name);
+						builder.putName(emoji.name, id);
+						builder.putUtf(emoji.surrogates, id);
+						for (final String string : emoji.strings)
+							builder.putAlias(string, id);
+					}
+		return builder.build();
 	}
 
 	public static class StandardEmojiIdDictionaryBuilder {
@@ -49,33 +70,14 @@ public class StandardEmojiIdDictionary {
 				.filter(str -> {
 					return !shortAliasFilterNot.matcher(str).matches()&&shortAliasFilter.matcher(str).matches()&&!shortAliasBlacklist.contains(str);
 				}).collect(Collectors.toSet()));
-		private final Supplier<Pattern> shortAliasPattern = Suppliers.memoize(() -> {
-			final List<String> emoticons = Lists.newArrayList(this.shortAlias.get());
-			//List of emotions should be pre-processed to handle instances of subtrings like :-) :-
-			//Without this pre-processing, emoticons in a string won't be processed properly
-			for (int i = 0; i<emoticons.size(); i++)
-				for (int j = i+1; j<emoticons.size(); j++) {
-					final String o1 = emoticons.get(i);
-					final String o2 = emoticons.get(j);
-					if (o2.contains(o1)) {
-						final String temp = o2;
-						emoticons.remove(j);
-						emoticons.add(i, temp);
-					}
-				}
-			final String emojiFilter = emoticons.stream().map(Pattern::quote).collect(Collectors.joining("|"));
-			return Pattern.compile(String.format("(?<=^| )(?:%s)(?= |$)", emojiFilter));
-		});
+		// The trie always prefers the longest emoticon, so substrings like :-) :- need no pre-ordering
+		private final Supplier<EmojiTrie> shortAliasTrie = Suppliers.memoize(() -> EmojiTrie.builder().addAll(this.shortAlias.get()).build());
 		private static final Pattern utfFilterNot = Pattern.compile(".+[\uD83C\uDFFB-\uD83C\uDFFF]$");
 		private final Supplier<Set<String>> utf = Suppliers.memoize(() -> this.utfDictionary.keySet().stream()
 				.filter(str -> {
 					return !utfFilterNot.matcher(str).matches()&&!utfBlacklist.contains(str);
 				}).collect(Collectors.toSet()));
-		private final Supplier<Pattern> utfPattern = Suppliers.memoize(() -> {
-			final String emojiFilter = this.utf.get().stream().map(Pattern::quote).collect(Collectors.joining("|"));
-			final String toneFilter = "[\uD83C\uDFFB-\uD83C\uDFFF]";
-			return Pattern.compile(String.format("(?:%s)%s?", emojiFilter, toneFilter));
-		});
+		private final Supplier<EmojiTrie> utfTrie = Suppliers.memoize(() -> EmojiTrie.builder().addAll(this.utf.get()).build());
 
 		public StandardEmojiIdDictionaryBuilder putAllName(final Map<String, EmojiId> dictionary) {
 			this.nameDictionary.putAll(dictionary);
@@ -112,8 +114,8 @@ public class StandardEmojiIdDictionary {
 					ImmutableMap.copyOf(this.simpleName.get()),
 					ImmutableMap.copyOf(this.aliasDictionary),
 					ImmutableMap.copyOf(this.utfDictionary),
-					this.shortAliasPattern.get(),
-					this.utfPattern.get());
+					this.shortAliasTrie.get(),
+					this.utfTrie.get());
 		}
 	}
 }
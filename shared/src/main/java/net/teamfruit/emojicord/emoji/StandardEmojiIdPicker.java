@@ -6,7 +6,7 @@ import java.util.stream.Collectors;
 import com.google.common.collect.Lists;
 
 public class StandardEmojiIdPicker {
-	public static StandardEmojiIdPicker instance = new StandardEmojiIdPickerBuilder().build();
+	public static volatile StandardEmojiIdPicker instance = new StandardEmojiIdPickerBuilder().build();
 
 	public final List<PickerGroup> categories;
 
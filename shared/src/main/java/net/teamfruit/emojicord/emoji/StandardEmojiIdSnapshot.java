@@ -0,0 +1,251 @@
+package net.teamfruit.emojicord.emoji;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import net.teamfruit.emojicord.Log;
+import org.apache.commons.io.FileUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prebuilt {@link StandardEmojiIdDictionary} stored as flat arrays, so startup reads one file in bulk instead of parsing and indexing the JSON lists.
+ * The snapshot is tagged with a hash of the lists it was built from and ignored once they change.
+ * <p>
+ * Layout, big-endian:
+ * <pre>
+ * int magic, int version, byte[40] source hash (hex)
+ * int stringCount, int[stringCount+1] offsets, char[offsets[stringCount]] chars
+ * int idCount, idCount * (int url, int cache)
+ * name, alias, utf dictionaries: int count, count * (int key, int id)
+ * shortAlias, utf tries: int nodes, int edges, int[nodes+1] edgeStart, char[edges] edgeChar, int[edges] edgeTarget, byte[nodes] terminal
+ * </pre>
+ * Strings are indexes into the string table and ids are indexes into the id table.
+ */
+public class StandardEmojiIdSnapshot {
+	private static final int MAGIC = 0x45435344; // "ECSD"
+	private static final int VERSION = 1;
+	private static final int HASH_LENGTH = 40;
+
+	private StandardEmojiIdSnapshot() {
+	}
+
+	/**
+	 * @return the dictionary stored for the given source hash, or null if the file is missing, stale or corrupted
+	 */
+	public static @Nullable StandardEmojiIdDictionary load(final @Nonnull File file, final @Nonnull String hash) {
+		if (!file.isFile())
+			return null;
+		try {
+			// Read rather than mapped, so the file is not held open when a stale snapshot is replaced
+			final ByteBuffer buffer = ByteBuffer.wrap(FileUtils.readFileToByteArray(file));
+			return read(buffer, hash);
+		} catch (final IOException|RuntimeException e) {
+			// Runs during startup, so any damage to the file is a cache miss rather than a crash
+			Log.log.warn("Discarding corrupted standard emoji snapshot: ", e);
+			FileUtils.deleteQuietly(file);
+		}
+		return null;
+	}
+
+	/**
+	 * Reads a count and checks that the buffer still holds that many elements, so a corrupted count fails before anything is allocated.
+	 */
+	private static int getCount(final ByteBuffer buffer, final int elementSize) {
+		final int count = buffer.getInt();
+		if (count<0||(long) count*elementSize>buffer.remaining())
+			throw new IllegalArgumentException("Invalid count: "+count);
+		return count;
+	}
+
+	private static @Nullable StandardEmojiIdDictionary read(final ByteBuffer buffer, final String hash) {
+		if (buffer.getInt()!=MAGIC||buffer.getInt()!=VERSION)
+			return null;
+		final byte[] source = new byte[HASH_LENGTH];
+		buffer.get(source);
+		if (!hash.equals(new String(source, StandardCharsets.US_ASCII)))
+			return null;
+
+		final int stringCount = getCount(buffer, 4);
+		final int[] offsets = new int[stringCount+1];
+		buffer.asIntBuffer().get(offsets);
+		buffer.position(buffer.position()+offsets.length*4);
+		if (offsets[stringCount]<0||(long) offsets[stringCount]*2>buffer.remaining())
+			throw new IllegalArgumentException("Invalid string table length: "+offsets[stringCount]);
+		final char[] chars = new char[offsets[stringCount]];
+		buffer.asCharBuffer().get(chars);
+		buffer.position(buffer.position()+chars.length*2);
+		final String[] strings = new String[stringCount];
+		for (int i = 0; i<stringCount; i++)
+			strings[i] = new String(chars, offsets[i], offsets[i+1]-offsets[i]);
+
+		final int idCount = getCount(buffer, 2*4);
+		final EmojiId[] ids = new EmojiId[idCount];
+		for (int i = 0; i<idCount; i++) {
+			final String url = strings[buffer.getInt()];
+			final String cache = strings[buffer.getInt()];
+			ids[i] = EmojiId.StandardEmojiId.of(url, cache);
+		}
+
+		final ImmutableMap<String, EmojiId> nameDictionary = readDictionary(buffer, strings, ids);
+		final ImmutableMap<String, EmojiId> aliasDictionary = readDictionary(buffer, strings, ids);
+		final ImmutableMap<String, EmojiId> utfDictionary = readDictionary(buffer, strings, ids);
+		final EmojiTrie shortAliasTrie = readTrie(buffer);
+		final EmojiTrie utfTrie = readTrie(buffer);
+		if (buffer.hasRemaining())
+			throw new IllegalArgumentException("Trailing bytes: "+buffer.remaining());
+		return new StandardEmojiIdDictionary(nameDictionary, aliasDictionary, utfDictionary, shortAliasTrie, utfTrie);
+	}
+
+	private static ImmutableMap<String, EmojiId> readDictionary(final ByteBuffer buffer, final String[] strings, final EmojiId[] ids) {
+		final int count = getCount(buffer, 2*4);
+		final ImmutableMap.Builder<String, EmojiId> builder = ImmutableMap.builder();
+		for (int i = 0; i<count; i++) {
+			final String key = strings[buffer.getInt()];
+			builder.put(key, ids[buffer.getInt()]);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Reads a trie and checks every edge range and target, so a damaged file fails here instead of on the render thread.
+	 */
+	private static EmojiTrie readTrie(final ByteBuffer buffer) {
+		final int nodes = getCount(buffer, 4+1);
+		final int edges = getCount(buffer, 2+4);
+		if (nodes<=0)
+			throw new IllegalArgumentException("Trie without root");
+		final int[] edgeStart = new int[nodes+1];
+		final char[] edgeChar = new char[edges];
+		final int[] edgeTarget = new int[edges];
+		final byte[] terminalBytes = new byte[nodes];
+		buffer.asIntBuffer().get(edgeStart);
+		buffer.position(buffer.position()+edgeStart.length*4);
+		buffer.asCharBuffer().get(edgeChar);
+		buffer.position(buffer.position()+edgeChar.length*2);
+		buffer.asIntBuffer().get(edgeTarget);
+		buffer.position(buffer.position()+edgeTarget.length*4);
+		buffer.get(terminalBytes);
+		if (edgeStart[0]!=0||edgeStart[nodes]!=edges)
+			throw new IllegalArgumentException("Invalid edge bounds: "+edgeStart[0]+", "+edgeStart[nodes]);
+		for (int i = 0; i<nodes; i++)
+			if (edgeStart[i]>edgeStart[i+1])
+				throw new IllegalArgumentException("Invalid edge start: "+edgeStart[i+1]);
+		for (int i = 0; i<edges; i++)
+			if (edgeTarget[i]<0||edgeTarget[i]>=nodes)
+				throw new IllegalArgumentException("Invalid edge target: "+edgeTarget[i]);
+		final boolean[] terminal = new boolean[nodes];
+		for (int i = 0; i<nodes; i++)
+			terminal[i] = terminalBytes[i]!=0;
+		return new EmojiTrie(edgeStart, edgeChar, edgeTarget, terminal);
+	}
+
+	/**
+	 * Writes the dictionary through a temporary file, replacing the previous snapshot atomically.
+	 */
+	public static void save(final @Nonnull File file, final @Nonnull String hash, final @Nonnull StandardEmojiIdDictionary dictionary) {
+		if (hash.length()!=HASH_LENGTH)
+			return;
+
+		final List<String> strings = Lists.newArrayList();
+		final Map<String, Integer> stringIndexes = Maps.newHashMap();
+		final List<EmojiId> ids = Lists.newArrayList();
+		final Map<EmojiId, Integer> idIndexes = Maps.newHashMap();
+		final List<ImmutableMap<String, EmojiId>> dictionaries = Lists.newArrayList(dictionary.nameDictionary, dictionary.aliasDictionary, dictionary.utfDictionary);
+		for (final ImmutableMap<String, EmojiId> map : dictionaries)
+			for (final Map.Entry<String, EmojiId> entry : map.entrySet()) {
+				intern(strings, stringIndexes, entry.getKey());
+				if (!idIndexes.containsKey(entry.getValue())) {
+					idIndexes.put(entry.getValue(), ids.size());
+					ids.add(entry.getValue());
+					intern(strings, stringIndexes, entry.getValue().getId());
+					intern(strings, stringIndexes, entry.getValue().getCacheName());
+				}
+			}
+
+		int chars = 0;
+		for (final String string : strings)
+			chars += string.length();
+		int size = 4+4+HASH_LENGTH;
+		size += 4+(strings.size()+1)*4+chars*2;
+		size += 4+ids.size()*2*4;
+		for (final ImmutableMap<String, EmojiId> map : dictionaries)
+			size += 4+map.size()*2*4;
+		for (final EmojiTrie trie : Lists.newArrayList(dictionary.shortAliasTrie, dictionary.utfTrie))
+			size += 4+4+trie.getEdgeStart().length*4+trie.getEdgeChar().length*2+trie.getEdgeTarget().length*4+trie.getTerminal().length;
+
+		final ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.put(hash.getBytes(StandardCharsets.US_ASCII));
+
+		buffer.putInt(strings.size());
+		int offset = 0;
+		buffer.putInt(offset);
+		for (final String string : strings)
+			buffer.putInt(offset += string.length());
+		for (final String string : strings)
+			for (int i = 0; i<string.length(); i++)
+				buffer.putChar(string.charAt(i));
+
+		buffer.putInt(ids.size());
+		for (final EmojiId id : ids) {
+			buffer.putInt(stringIndexes.get(id.getId()));
+			buffer.putInt(stringIndexes.get(id.getCacheName()));
+		}
+
+		for (final ImmutableMap<String, EmojiId> map : dictionaries) {
+			buffer.putInt(map.size());
+			for (final Map.Entry<String, EmojiId> entry : map.entrySet()) {
+				buffer.putInt(stringIndexes.get(entry.getKey()));
+				buffer.putInt(idIndexes.get(entry.getValue()));
+			}
+		}
+
+		for (final EmojiTrie trie : Lists.newArrayList(dictionary.shortAliasTrie, dictionary.utfTrie)) {
+			buffer.putInt(trie.getTerminal().length);
+			buffer.putInt(trie.getEdgeChar().length);
+			for (final int start : trie.getEdgeStart())
+				buffer.putInt(start);
+			for (final char c : trie.getEdgeChar())
+				buffer.putChar(c);
+			for (final int target : trie.getEdgeTarget())
+				buffer.putInt(target);
+			for (final boolean terminal : trie.getTerminal())
+				buffer.put((byte) (terminal ? 1 : 0));
+		}
+		buffer.flip();
+
+		File temp = null;
+		try {
+			FileUtils.forceMkdir(file.getParentFile());
+			temp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+			try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				while (buffer.hasRemaining())
+					channel.write(buffer);
+			}
+			EmojiCache.move(temp, file);
+		} catch (final IOException e) {
+			Log.log.warn("Failed to save standard emoji snapshot: ", e);
+		} finally {
+			if (temp!=null)
+				FileUtils.deleteQuietly(temp);
+		}
+	}
+
+	private static void intern(final List<String> strings, final Map<String, Integer> indexes, final String string) {
+		if (!indexes.containsKey(string)) {
+			indexes.put(string, strings.size());
+			strings.add(string);
+		}
+	}
+}
@@ -16,6 +16,7 @@ import net.teamfruit.emojicord.compat.VersionChecker;
 
 import com.google.common.base.Supplier;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import net.minecraft.client.gui.FontRenderer;
 import net.teamfruit.emojicord.EmojicordConfig;
 import net.teamfruit.emojicord.OSUtils;
@@ -31,7 +32,10 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -140,7 +144,7 @@ public class EmojiSelectionChat implements IChatOverlay {
 		//EmojiFrequently.instance.load(Locations.instance.getEmojicordDirectory());
 		final List<PickerGroup> standardCategories = StandardEmojiIdPicker.instance.categories;
 		final List<PickerGroup> frequently = Lists.newArrayList(EmojiFrequently.instance.getGroup());
-		final List<PickerGroup> discordCategories = DiscordEmojiIdDictionary.instance.pickerGroups;
+		final List<PickerGroup> discordCategories = DiscordEmojiIdDictionary.instance.getPickerGroups();
 		final List<PickerGroup> categories = Stream.of(frequently.stream(), discordCategories.stream(), standardCategories.stream()).flatMap(stream -> stream).collect(Collectors.toList());
 		final List<Pair<String, PickerGroup>> buttonCategories = ((Supplier<List<Pair<String, PickerGroup>>>) () -> {
 			return Arrays.asList(
@@ -163,6 +167,13 @@ public class EmojiSelectionChat implements IChatOverlay {
 	}
 
 	private class EmojiSelectionList implements IChatOverlay {
+		private static final int row = 10;
+		private static final int spanY = 14;
+		private static final int titleSpanY = 4;
+		private static final int titleSpanY2 = 12;
+		// Rows above and below the view whose images are fetched ahead of scrolling
+		private static final int prefetchRows = 4;
+
 		private final Rectangle2d rectangle;
 		private final Rectangle2d rectTop;
 		private final Rectangle2d rectInput;
@@ -180,6 +191,12 @@ public class EmojiSelectionChat implements IChatOverlay {
 		private final List<PickerGroup> baseCategories;
 		private final List<Pair<String, PickerGroup>> buttonCategories;
 		private List<PickerGroup> categories;
+		// Top of each group within the list, followed by the total height
+		private int[] groupOffsets = new int[1];
+		// Skin tone variants of the items drawn so far, for tonedColor
+		private final Map<PickerItem, EmojiId> toned = new IdentityHashMap<>();
+		private final Set<EmojiId> prefetched = Sets.newHashSet();
+		private int tonedColor = -1;
 
 		private #if MC_12_LATER TextFieldWidget #else GuiTextField #endif searchField;
 		private float scrollY;
@@ -239,15 +256,12 @@ public class EmojiSelectionChat implements IChatOverlay {
 		public boolean onDraw() {
 			IChatOverlay.fill(this.rectangle, 0xFFFFFFFF);
 
-			final int row = 10;
 			final int emojiSize = 10;
 			final int emojiMargin = 2;
+			final int cellSize = emojiSize + emojiMargin * 2;
 
 			final int paddingLeft = 8;
 			final int spanX = 14;
-			final int spanY = 14;
-			final int titleSpanY = 4;
-			final int titleSpanY2 = 12;
 
 			final int scrollbarWidth = 6;
 
@@ -255,30 +269,45 @@ public class EmojiSelectionChat implements IChatOverlay {
 				this.scrollY = MathHelper.lerp(this.scrollY, this.scrollY0, .5f);
 
 				final int posX = this.rectMain.getX() + paddingLeft;
-				int posY = this.rectMain.getY() + (int) this.scrollY;
+				final int top = this.rectMain.getY() + (int) this.scrollY;
+				final int viewTop = this.rectMain.getY();
+				final int viewBottom = this.rectMain.getY() + this.rectMain.getHeight();
+				final int prefetchTop = viewTop - prefetchRows * spanY;
+				final int prefetchBottom = viewBottom + prefetchRows * spanY;
+				final int mouseX = EmojiSelectionChat.this.mouseX;
+				final int mouseY = EmojiSelectionChat.this.mouseY;
 				this.selecting = null;
-				int groupIndex = 0;
-				for (final PickerGroup group : this.categories) {
-					posY += titleSpanY;
-					if (this.rectMain.contains(this.rectMain.getX(), posY) || this.rectMain.contains(this.rectMain.getX() + this.rectMain.getWidth(), posY + titleSpanY2))
-						EmojiSelectionChat.this.font.drawString(group.getTranslation(), posX, posY, 0xFFABABAB);
-					posY += titleSpanY2;
-					int index = 0;
-					for (final PickerItem item : group.items) {
-						final int ix = index % row;
-						final int iy = index / row;
-						final int px = posX + ix * spanX;
-						final int py = posY + iy * spanY;
-						final Rectangle2d rect = new Rectangle2d(px - emojiMargin, py - emojiMargin, emojiSize + emojiMargin * 2, emojiSize + emojiMargin * 2);
-						if (this.rectMain.overlap(rect)) {
+				// Only the groups and rows inside the view are drawn, and those just outside it are prefetched
+				for (int groupIndex = findGroup(prefetchTop - top); groupIndex < this.categories.size() && top + this.groupOffsets[groupIndex] <= prefetchBottom; groupIndex++) {
+					final PickerGroup group = this.categories.get(groupIndex);
+					final int titleY = top + this.groupOffsets[groupIndex] + titleSpanY;
+					if (this.rectMain.contains(this.rectMain.getX(), titleY) || this.rectMain.contains(this.rectMain.getX() + this.rectMain.getWidth(), titleY + titleSpanY2))
+						EmojiSelectionChat.this.font.drawString(group.getTranslation(), posX, titleY, 0xFFABABAB);
+					final int itemsY = titleY + titleSpanY2;
+					final int size = group.items.size();
+					for (int iy = Math.max(0, (prefetchTop - itemsY) / spanY - 1); iy * row < size; iy++) {
+						final int cellY = itemsY + iy * spanY - emojiMargin;
+						if (cellY > prefetchBottom)
+							break;
+						if (cellY + cellSize < prefetchTop)
+							continue;
+						final boolean visible = cellY <= viewBottom && cellY + cellSize >= viewTop;
+						for (int ix = 0; ix < row && iy * row + ix < size; ix++) {
+							final int index = iy * row + ix;
+							final PickerItem item = group.items.get(index);
+							if (item == null)
+								continue;
+							if (!visible) {
+								final EmojiId id = getTonedId(item);
+								if (this.prefetched.add(id))
+									EmojiObject.EmojiObjectCache.instance.prefetch(id);
+								continue;
+							}
+							final int cellX = posX + ix * spanX - emojiMargin;
 							if (this.selectedGroupIndex == groupIndex && this.selectedIndex == index)
-								IChatOverlay.fill(rect, 0xFFEBEBEB);
-							String tone = "";
-							if (this.selectedColor > 0)
-								if (EmojiId.StandardEmojiId.fromAlias(StringUtils.strip(item.name, ":") + ":skin-tone-" + this.selectedColor) != null)
-									tone = ":skin-tone-" + this.selectedColor + ":";
-							EmojiSelectionChat.this.font.drawString(item.name + tone, rect.getX() + emojiMargin, rect.getY() + emojiMargin, 0xFFFFFFFF);
-							if (rect.contains(EmojiSelectionChat.this.mouseX, EmojiSelectionChat.this.mouseY)) {
+								IChatOverlay.fill(cellX, cellY, cellX + cellSize, cellY + cellSize, 0xFFEBEBEB);
+							IChatOverlay.drawEmoji(getTonedId(item), cellX + emojiMargin, cellY + emojiMargin, emojiSize);
+							if (mouseX >= cellX && mouseX <= cellX + cellSize && mouseY >= cellY && mouseY <= cellY + cellSize) {
 								this.selecting = item;
 								if (!(this.selectedGroupIndex == groupIndex && this.selectedIndex == index)) {
 									this.selectedGroupIndex = groupIndex;
@@ -288,14 +317,9 @@ public class EmojiSelectionChat implements IChatOverlay {
 								}
 							}
 						}
-						++index;
 					}
-					posY += (group.items.size() / row + (group.items.size() % row > 0 ? 1 : 0)) * spanY;
-					++groupIndex;
-					if (posY > this.rectMain.getY() + this.rectMain.getHeight())
-						break;
 				}
-				final int height = this.categories.stream().mapToInt(e -> titleSpanY + titleSpanY2 + ((e.items.size() - 1) / row + 1) * spanY).sum();
+				final int height = this.groupOffsets[this.categories.size()];
 				this.scrollY0 = height <= this.rectMain.getHeight() ? 0 : -MathHelper.clamp(-this.scrollY0, 0, height - this.rectMain.getHeight());
 
 				final Rectangle2d rectScroll0 = new Rectangle2d(this.rectMain.getX() + this.rectMain.getWidth() - scrollbarWidth, this.rectMain.getY(), scrollbarWidth, this.rectMain.getHeight());
@@ -342,17 +366,8 @@ public class EmojiSelectionChat implements IChatOverlay {
 			EmojiSelectionChat.this.font.drawString(":gear:", this.rectSettingButton.getX() + colorOffset, this.rectSettingButton.getY() + colorOffset, 0xFFFFFFFF);
 
 			{
-				PickerGroup currentGroup = null;
-				{
-					int height = 0;
-					for (final PickerGroup group : this.categories) {
-						height += titleSpanY + titleSpanY2 + ((group.items.size() - 1) / row + 1) * spanY;
-						if (height + this.scrollY0 > 0) {
-							currentGroup = group;
-							break;
-						}
-					}
-				}
+				final int currentGroupIndex = findGroup(-this.scrollY0);
+				final PickerGroup currentGroup = currentGroupIndex < this.categories.size() ? this.categories.get(currentGroupIndex) : null;
 
 				final int posX = this.rectBottom.getX() + paddingLeft;
 				final int posY = this.rectBottom.getY() + 2;
@@ -442,33 +457,15 @@ public class EmojiSelectionChat implements IChatOverlay {
 			if (b)
 				return true;
 			if (this.rectMain.contains(EmojiSelectionChat.this.mouseX, EmojiSelectionChat.this.mouseY) && this.selecting != null) {
-				String tone = "";
-				if (this.selecting.id instanceof EmojiId.StandardEmojiId)
-					if (this.selectedColor > 0)
-						if (EmojiId.StandardEmojiId.fromAlias(StringUtils.strip(this.selecting.name, ":") + ":skin-tone-" + this.selectedColor) != null)
-							tone = ":skin-tone-" + this.selectedColor + ":";
+				final String tone = getTonedId(this.selecting) != this.selecting.id ? ":skin-tone-" + this.selectedColor + ":" : "";
 				EmojiSelectionChat.this.inputField.writeText(this.selecting.name + tone + " ");
 				hide();
 				return true;
 			}
 			if (this.rectBottom.contains(EmojiSelectionChat.this.mouseX, EmojiSelectionChat.this.mouseY) && this.selectingGroupButton != null) {
-				{
-					final int row = 10;
-					final int spanY = 14;
-					final int titleSpanY = 4;
-					final int titleSpanY2 = 12;
-
-					{
-						int height = 0;
-						for (final PickerGroup group : this.categories) {
-							if (group == this.selectingGroupButton) {
-								this.scrollY0 = -height;
-								break;
-							}
-							height += titleSpanY + titleSpanY2 + ((group.items.size() - 1) / row + 1) * spanY;
-						}
-					}
-				}
+				final int groupIndex = this.categories.indexOf(this.selectingGroupButton);
+				if (groupIndex >= 0)
+					this.scrollY0 = -this.groupOffsets[groupIndex];
 				return true;
 			}
 			return true;
@@ -495,13 +492,54 @@ public class EmojiSelectionChat implements IChatOverlay {
 			this.selectedIndex = -1;
 			if (StringUtils.isNotEmpty(this.searchField.getText())) {
 				CompatGui.CompatTextFieldWidget.setSuggestion(this.searchField, "");
-				final String searchText = StringUtils.strip(this.searchField.getText(), ":");
-				final List<PickerItem> candidates = this.baseCategories.stream().flatMap(e -> e.items.stream()).filter(e -> e.alias.stream().anyMatch(s -> s.contains(searchText))).collect(Collectors.toList());
+				final List<PickerItem> candidates = PickerSearchIndex.get().search(this.searchField.getText());
 				this.categories = Lists.newArrayList(new PickerGroup("Search", candidates));
 			} else {
 				CompatGui.CompatTextFieldWidget.setSuggestion(this.searchField, CompatI18n.format("emojicord.gui.picker.search"));
 				this.categories = this.baseCategories;
 			}
+			layout();
+		}
+
+		private void layout() {
+			this.groupOffsets = new int[this.categories.size() + 1];
+			for (int i = 0; i < this.categories.size(); i++)
+				this.groupOffsets[i + 1] = this.groupOffsets[i] + titleSpanY + titleSpanY2 + ((this.categories.get(i).items.size() - 1) / row + 1) * spanY;
+		}
+
+		/**
+		 * @return the group spanning the offset from the top of the list, or the group count past its end
+		 */
+		private int findGroup(final int offset) {
+			int low = 0;
+			int high = this.categories.size();
+			while (low < high) {
+				final int mid = (low + high) >>> 1;
+				if (this.groupOffsets[mid + 1] <= offset)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			return low;
+		}
+
+		/**
+		 * @return the skin tone variant of a standard emoji for the selected color, or its own id if it has none
+		 */
+		private EmojiId getTonedId(final PickerItem item) {
+			if (this.selectedColor <= 0 || !(item.id instanceof EmojiId.StandardEmojiId))
+				return item.id;
+			if (this.tonedColor != this.selectedColor) {
+				this.toned.clear();
+				this.tonedColor = this.selectedColor;
+			}
+			EmojiId id = this.toned.get(item);
+			if (id == null) {
+				final EmojiId tone = EmojiId.StandardEmojiId.fromAlias(StringUtils.strip(item.name, ":") + ":skin-tone-" + this.selectedColor);
+				id = tone != null ? tone : item.id;
+				this.toned.put(item, id);
+			}
+			return id;
 		}
 
 		@Override
@@ -207,7 +207,7 @@ public class EmojiSettings implements IChatOverlay {
 					#if MC_12_LATER float #else int #endif posY = rectInner.getY() + 2;
 					EmojiSettings.this.font.drawString(CompatI18n.format("emojicord.gui.settings.menu.packs"), rectInner.getX() + 2, posY, 0xFF777777);
 					posY += 13;
-					for (final EmojiDiscordList group : DiscordEmojiIdDictionary.instance.groups)
+					for (final EmojiDiscordList group : DiscordEmojiIdDictionary.instance.getGroups())
 						if (posY + 20 > rectInner.getY() + rectInner.getHeight()) {
 							EmojiSettings.this.font.drawString(CompatI18n.format("emojicord.gui.settings.menu.more"), rectInner.getX() + 12, posY, 0xFF777777);
 							break;
@@ -487,7 +487,7 @@ public class EmojiSettings implements IChatOverlay {
 			@Override
 			public void onOK() {
 				this.closing = false;
-				DiscordEmojiIdDictionary.instance.loadAll();
+				DiscordEmojiIdDictionary.instance.reload(ClientProxy.eventHandler.takeDictionaryChanges());
 				EmojiSettings.this.addGui = null;
 			}
 
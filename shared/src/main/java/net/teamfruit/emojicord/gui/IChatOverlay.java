@@ -2,9 +2,13 @@ package net.teamfruit.emojicord.gui;
 
 import org.lwjgl.opengl.GL11;
 
+import net.teamfruit.emojicord.compat.Compat;
 import net.teamfruit.emojicord.compat.CompatBaseVertex;
 import net.teamfruit.emojicord.compat.CompatVertex;
 import net.teamfruit.emojicord.compat.OpenGL;
+import net.teamfruit.emojicord.emoji.EmojiAtlas.EmojiAtlasRegion;
+import net.teamfruit.emojicord.emoji.EmojiId;
+import net.teamfruit.emojicord.emoji.EmojiObject;
 
 public interface IChatOverlay {
 	default boolean onDraw() {
@@ -73,4 +77,23 @@ public interface IChatOverlay {
 	public static void fill(final Rectangle2d rect, final int color) {
 		fill(rect.getX(), rect.getY(), rect.getX()+rect.getWidth(), rect.getY()+rect.getHeight(), color);
 	}
+
+	/**
+	 * Draws the current frame of an emoji as a textured quad, without going through the font renderer.
+	 */
+	public static void drawEmoji(final EmojiId id, final int x, final int y, final int size) {
+		final EmojiAtlasRegion region = EmojiObject.EmojiObjectCache.instance.getEmojiObject(id).loadAndGetRegion();
+		final CompatBaseVertex t = CompatVertex.getTessellator();
+		OpenGL.glEnable(GL11.GL_BLEND);
+		OpenGL.glBlendFuncSeparate(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA, GL11.GL_ONE, GL11.GL_ZERO);
+		OpenGL.glColor4f(1.0F, 1.0F, 1.0F, 1.0F);
+		Compat.getMinecraft().getTextureManager().bindTexture(region.location);
+		t.beginTexture(GL11.GL_QUADS);
+		t.pos(x, y, 0.0D).tex(region.u0, region.v0);
+		t.pos(x, y+size, 0.0D).tex(region.u0, region.v1);
+		t.pos(x+size, y+size, 0.0D).tex(region.u1, region.v1);
+		t.pos(x+size, y, 0.0D).tex(region.u1, region.v0);
+		t.draw();
+		OpenGL.glDisable(GL11.GL_BLEND);
+	}
 }
@@ -0,0 +1,78 @@
+package net.teamfruit.emojicord.gui;
+
+#if MC_12_LATER
+import net.minecraft.client.gui.screen.ChatScreen;
+#else
+import net.minecraft.client.gui.GuiChat;
+#endif
+
+import net.minecraft.client.gui.FontRenderer;
+import net.teamfruit.emojicord.EmojicordConfig;
+import net.teamfruit.emojicord.compat.Compat;
+import net.teamfruit.emojicord.compat.Compat.CompatI18n;
+import net.teamfruit.emojicord.emoji.EmojiFontRenderer;
+import net.teamfruit.emojicord.util.Metrics;
+
+import java.util.List;
+
+/**
+ * Lists every {@link Metrics} value in the top left corner of the chat screen while the MetricsOverlay option is on.
+ * Clicking the list saves the values to metrics.json in the Emojicord directory.
+ * The list is drawn past the emoji renderer, so it does not count towards the font metrics it shows.
+ */
+public class MetricsOverlay implements IChatOverlay {
+	public final #if MC_12_LATER ChatScreen #else GuiChat #endif chatScreen;
+	public final FontRenderer font;
+	public int mouseX, mouseY;
+	private Rectangle2d rectangle;
+	private String status = CompatI18n.format("emojicord.gui.metrics.save");
+
+	public MetricsOverlay(final #if MC_12_LATER ChatScreen #else GuiChat #endif chatScreen) {
+		this.chatScreen = chatScreen;
+		this.font = Compat.getMinecraft(). #if MC_10 fontRendererObj #else fontRenderer #endif ;
+	}
+
+	private boolean isEnabled() {
+		return EmojicordConfig.spec.isAvailable() && EmojicordConfig.RENDER.metricsOverlay.get();
+	}
+
+	@Override
+	public boolean onDraw() {
+		if (!isEnabled()) {
+			this.rectangle = null;
+			return false;
+		}
+		final List<String> lines = Metrics.instance.format();
+		lines.add(this.status);
+		EmojiFontRenderer.bypass = true;
+		try {
+			int width = 0;
+			for (final String line : lines)
+				width = Math.max(width, this.font.getStringWidth(line));
+			this.rectangle = new Rectangle2d(2, 2, width + 4, lines.size() * 10 + 2);
+			IChatOverlay.fill(this.rectangle, 0xA0000000);
+			for (int i = 0; i < lines.size(); i++)
+				this.font.drawStringWithShadow(lines.get(i), this.rectangle.getX() + 2, this.rectangle.getY() + 2 + i * 10, i < lines.size() - 1 ? 0xFFE0E0E0 : 0xFFFFFF00);
+		} finally {
+			EmojiFontRenderer.bypass = false;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean onMouseClicked(final int button) {
+		if (button != 0 || this.rectangle == null || !this.rectangle.contains(this.mouseX, this.mouseY))
+			return false;
+		this.status = Metrics.instance.dump()
+				? CompatI18n.format("emojicord.gui.metrics.saved", Metrics.instance.getDumpFile().getName())
+				: CompatI18n.format("emojicord.gui.metrics.failed");
+		return true;
+	}
+
+	@Override
+	public boolean onMouseInput(final int mouseX, final int mouseY) {
+		this.mouseX = mouseX;
+		this.mouseY = mouseY;
+		return false;
+	}
+}
@@ -8,7 +8,6 @@ import net.minecraft.client.gui.GuiChat;
 import net.minecraft.client.gui.GuiTextField;
 #endif
 
-import com.google.common.collect.Iterables;
 import com.mojang.brigadier.Message;
 import com.mojang.brigadier.StringReader;
 import com.mojang.brigadier.suggestion.Suggestion;
@@ -20,17 +19,17 @@ import net.teamfruit.emojicord.compat.Compat;
 import net.teamfruit.emojicord.compat.CompatBaseVersion;
 import net.teamfruit.emojicord.compat.CompatGui;
 import net.teamfruit.emojicord.compat.CompatVersion;
-import net.teamfruit.emojicord.emoji.DiscordEmojiIdDictionary;
-import net.teamfruit.emojicord.emoji.StandardEmojiIdDictionary;
+import net.teamfruit.emojicord.emoji.EmojiSuggestionIndex;
 import net.teamfruit.emojicord.util.MathHelper;
 import org.apache.commons.lang3.StringUtils;
 
-import java.util.Locale;
 import java.util.concurrent.CompletableFuture;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class SuggestionChat implements IChatOverlay {
+	public static final int SUGGESTION_LIMIT = 100;
+
 	public final #if MC_12_LATER ChatScreen #else GuiChat #endif chatScreen;
 	public final #if MC_12_LATER TextFieldWidget #else GuiTextField #endif inputField;
 	public final FontRenderer font;
@@ -108,6 +107,10 @@ public class SuggestionChat implements IChatOverlay {
 		if (!this.applyingSuggestion) {
 			CompatGui.CompatTextFieldWidget.setSuggestion(this.inputField, null);
 			this.suggestions = null;
+			if (this.pendingSuggestions != null) {
+				this.pendingSuggestions.cancel(false);
+				this.pendingSuggestions = null;
+			}
 		}
 
 		final StringReader stringreader = new StringReader(s);
@@ -116,13 +119,11 @@ public class SuggestionChat implements IChatOverlay {
 			final int lastWordIndex = getLastWordIndex(s);
 			if (lastWordIndex < s.length() ? s.charAt(lastWordIndex) == ':' : s.length() > 0 && s.charAt(0) == ':')
 				if ((skipCount || cursorPosition - lastWordIndex >= 3) && (this.suggestions == null || !this.applyingSuggestion)) {
-					final CompletableFuture<Iterable<String>> list = CompletableFuture.supplyAsync(() -> Iterables.concat(
-							StandardEmojiIdDictionary.instance.nameDictionary.keySet(),
-							DiscordEmojiIdDictionary.instance.get().keySet()));
-
-					this.pendingSuggestions = list.thenApplyAsync(e -> suggest(e, new SuggestionsBuilder(s, lastWordIndex)));
-					this.pendingSuggestions.thenRun(() -> {
-						if (this.pendingSuggestions.isDone())
+					// A cancelled query that has not started yet is skipped entirely
+					final CompletableFuture<Suggestions> pending = CompletableFuture.supplyAsync(() -> suggest(EmojiSuggestionIndex.get(), new SuggestionsBuilder(s, lastWordIndex)));
+					this.pendingSuggestions = pending;
+					pending.thenRun(() -> {
+						if (this.pendingSuggestions == pending)
 							updateUsageInfo();
 					});
 				}
@@ -135,12 +136,11 @@ public class SuggestionChat implements IChatOverlay {
 			showSuggestions();
 	}
 
-	private static Suggestions suggest(final Iterable<String> collection, final SuggestionsBuilder suggestionBuilder) {
-		final String s = suggestionBuilder.getRemaining().toLowerCase(Locale.ROOT);
+	private static Suggestions suggest(final EmojiSuggestionIndex index, final SuggestionsBuilder suggestionBuilder) {
+		final String s = StringUtils.removeStart(suggestionBuilder.getRemaining(), ":");
 
-		for (final String s1 : collection)
-			if ((":" + s1.toLowerCase(Locale.ROOT) + ":").startsWith(s))
-				suggestionBuilder.suggest(":" + s1 + ":");
+		for (final String s1 : index.search(s, SUGGESTION_LIMIT))
+			suggestionBuilder.suggest(":" + s1 + ":");
 
 		final Suggestions result = suggestionBuilder.build();
 		return result;
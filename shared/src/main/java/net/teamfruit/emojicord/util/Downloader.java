@@ -37,6 +37,8 @@ import net.teamfruit.emojicord.compat.Compat;
 
 public class Downloader {
 	public static final int timeout = 15000;
+	public static final int maxConnectionsPerRoute = 4;
+	public static final int maxConnections = 20;
 	public static final @Nonnull String useragent = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/75.0.3770.80 Safari/537.36";
 
 	public static final @Nonnull Downloader downloader = new Downloader();
@@ -88,6 +90,8 @@ public class Downloader {
 			this.manager = new PoolingHttpClientConnectionManager(registry);
 		else
 			this.manager = new PoolingHttpClientConnectionManager();
+		this.manager.setMaxTotal(maxConnections);
+		this.manager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
 
 		final Builder requestConfig = RequestConfig.custom();
 
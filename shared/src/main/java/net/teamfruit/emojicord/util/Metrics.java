@@ -0,0 +1,315 @@
+package net.teamfruit.emojicord.util;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import net.teamfruit.emojicord.Locations;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Counters, gauges and histograms describing what the mod costs at runtime, shown by the metrics overlay and dumped as JSON.
+ * Recording never locks: counts are striped {@link LongAdder}s, so render and worker threads do not contend on a shared field.
+ * Metrics are registered once into static fields by the classes that record them.
+ */
+public class Metrics {
+	public static final Metrics instance = new Metrics();
+
+	private final Map<String, Metric> metrics = new ConcurrentSkipListMap<>();
+	private final List<FrameCounter> frameCounters = new CopyOnWriteArrayList<>();
+
+	private Metrics() {
+	}
+
+	public interface Metric {
+		/**
+		 * @return the current value, as a number or a map that serializes to JSON
+		 */
+		Object snapshot();
+
+		/**
+		 * @return the current value in a few words
+		 */
+		String format();
+	}
+
+	public static class Counter implements Metric {
+		private final LongAdder count = new LongAdder();
+
+		public void increment() {
+			this.count.increment();
+		}
+
+		public void add(final long value) {
+			this.count.add(value);
+		}
+
+		public long get() {
+			return this.count.sum();
+		}
+
+		@Override
+		public Object snapshot() {
+			return get();
+		}
+
+		@Override
+		public String format() {
+			return Long.toString(get());
+		}
+	}
+
+	public static class Gauge implements Metric {
+		private final DoubleSupplier supplier;
+
+		private Gauge(final DoubleSupplier supplier) {
+			this.supplier = supplier;
+		}
+
+		@Override
+		public Object snapshot() {
+			return this.supplier.getAsDouble();
+		}
+
+		@Override
+		public String format() {
+			final double value = this.supplier.getAsDouble();
+			return value==(long) value ? Long.toString((long) value) : String.format("%.3f", value);
+		}
+	}
+
+	/**
+	 * Log-linear buckets in the manner of HdrHistogram: values below {@link #SUB_COUNT} are counted exactly,
+	 * and every power of two above is split into {@link #SUB_COUNT} buckets, so a percentile is off by at most 1/{@value #SUB_COUNT}.
+	 */
+	public static class Histogram implements Metric {
+		public static final int SUB_BITS = 3;
+		public static final int SUB_COUNT = 1<<SUB_BITS;
+		private static final int BUCKET_COUNT = (63-SUB_BITS+1)*SUB_COUNT;
+
+		private final boolean nanos;
+		private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+		private final LongAdder count = new LongAdder();
+		private final LongAdder sum = new LongAdder();
+		private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+		private Histogram(final boolean nanos) {
+			this.nanos = nanos;
+			for (int i = 0; i<this.buckets.length; i++)
+				this.buckets[i] = new LongAdder();
+		}
+
+		static int getBucket(final long value) {
+			if (value<SUB_COUNT)
+				return (int) Math.max(value, 0);
+			final int exponent = 63-Long.numberOfLeadingZeros(value);
+			return (exponent-SUB_BITS+1)*SUB_COUNT+(int) (value>>>exponent-SUB_BITS&SUB_COUNT-1);
+		}
+
+		/**
+		 * @return the smallest value counted in the bucket
+		 */
+		static long getLowest(final int bucket) {
+			if (bucket<SUB_COUNT)
+				return bucket;
+			final int exponent = bucket/SUB_COUNT+SUB_BITS-1;
+			return (long) (SUB_COUNT+bucket%SUB_COUNT)<<exponent-SUB_BITS;
+		}
+
+		public void record(final long value) {
+			this.buckets[getBucket(value)].increment();
+			this.count.increment();
+			this.sum.add(value);
+			this.max.accumulate(value);
+		}
+
+		public long getCount() {
+			return this.count.sum();
+		}
+
+		public double getMean() {
+			final long count = getCount();
+			return count>0 ? (double) this.sum.sum()/count : 0;
+		}
+
+		public long getMax() {
+			return this.max.get();
+		}
+
+		/**
+		 * @param percentile from 0 to 100
+		 * @return the highest value of the bucket the percentile falls in
+		 */
+		public long getPercentile(final double percentile) {
+			final long[] counts = new long[this.buckets.length];
+			long total = 0;
+			for (int i = 0; i<counts.length; i++)
+				total += counts[i] = this.buckets[i].sum();
+			if (total==0)
+				return 0;
+			final long target = Math.max(1, (long) Math.ceil(total*percentile/100));
+			long seen = 0;
+			for (int i = 0; i<counts.length; i++) {
+				seen += counts[i];
+				if (seen>=target)
+					return i+1<counts.length ? Math.min(getLowest(i+1)-1, getMax()) : getMax();
+			}
+			return getMax();
+		}
+
+		@Override
+		public Object snapshot() {
+			final Map<String, Object> snapshot = Maps.newLinkedHashMap();
+			snapshot.put("unit", this.nanos ? "ns" : "count");
+			snapshot.put("count", getCount());
+			snapshot.put("mean", getMean());
+			snapshot.put("p50", getPercentile(50));
+			snapshot.put("p90", getPercentile(90));
+			snapshot.put("p99", getPercentile(99));
+			snapshot.put("max", getMax());
+			return snapshot;
+		}
+
+		@Override
+		public String format() {
+			return String.format("n=%d p50=%s p99=%s max=%s", getCount(), format(getPercentile(50)), format(getPercentile(99)), format(getMax()));
+		}
+
+		private String format(final long value) {
+			if (!this.nanos)
+				return Long.toString(value);
+			if (value<1_000)
+				return value+"ns";
+			if (value<1_000_000)
+				return String.format("%.1fus", value/1e3);
+			return String.format("%.1fms", value/1e6);
+		}
+	}
+
+	/**
+	 * Counts events within a frame. At every frame boundary the count moves into a histogram of counts per frame.
+	 */
+	public static class FrameCounter implements Metric {
+		private final LongAdder current = new LongAdder();
+		private final Histogram perFrame = new Histogram(false);
+		private volatile long last;
+
+		public void increment() {
+			this.current.increment();
+		}
+
+		public void add(final long value) {
+			this.current.add(value);
+		}
+
+		/**
+		 * @return the count of the last completed frame
+		 */
+		public long getLast() {
+			return this.last;
+		}
+
+		private void endFrame() {
+			this.last = this.current.sumThenReset();
+			this.perFrame.record(this.last);
+		}
+
+		@Override
+		public Object snapshot() {
+			@SuppressWarnings("unchecked")
+			final Map<String, Object> snapshot = (Map<String, Object>) this.perFrame.snapshot();
+			snapshot.put("unit", "per frame");
+			snapshot.put("last", this.last);
+			return snapshot;
+		}
+
+		@Override
+		public String format() {
+			return String.format("last=%d %s", this.last, this.perFrame.format());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T extends Metric> T register(final String name, final T metric) {
+		final Metric registered = this.metrics.putIfAbsent(name, metric);
+		return registered!=null ? (T) registered : metric;
+	}
+
+	public @Nonnull Counter counter(final @Nonnull String name) {
+		return register(name, new Counter());
+	}
+
+	/**
+	 * @return a histogram of durations in nanoseconds
+	 */
+	public @Nonnull Histogram timer(final @Nonnull String name) {
+		return register(name, new Histogram(true));
+	}
+
+	public @Nonnull Histogram histogram(final @Nonnull String name) {
+		return register(name, new Histogram(false));
+	}
+
+	public @Nonnull FrameCounter frameCounter(final @Nonnull String name) {
+		final FrameCounter counter = new FrameCounter();
+		final FrameCounter registered = register(name, counter);
+		if (registered==counter)
+			this.frameCounters.add(counter);
+		return registered;
+	}
+
+	/**
+	 * @param supplier read only when the metrics are shown or dumped
+	 */
+	public void gauge(final @Nonnull String name, final @Nonnull DoubleSupplier supplier) {
+		this.metrics.put(name, new Gauge(supplier));
+	}
+
+	/**
+	 * Closes the current frame of every {@link FrameCounter}. Called once per frame on the render thread.
+	 */
+	public void endFrame() {
+		for (final FrameCounter counter : this.frameCounters)
+			counter.endFrame();
+	}
+
+	/**
+	 * @return every metric by name, in name order
+	 */
+	public @Nonnull Map<String, Object> snapshot() {
+		final Map<String, Object> snapshot = Maps.newLinkedHashMap();
+		for (final Map.Entry<String, Metric> entry : this.metrics.entrySet())
+			snapshot.put(entry.getKey(), entry.getValue().snapshot());
+		return snapshot;
+	}
+
+	/**
+	 * @return one line per metric, in name order
+	 */
+	public @Nonnull List<String> format() {
+		final List<String> lines = Lists.newArrayList();
+		for (final Map.Entry<String, Metric> entry : this.metrics.entrySet())
+			lines.add(entry.getKey()+": "+entry.getValue().format());
+		return lines;
+	}
+
+	public @Nonnull File getDumpFile() {
+		return new File(Locations.instance.getEmojicordDirectory(), "metrics.json");
+	}
+
+	/**
+	 * Writes the current values to {@link #getDumpFile()}.
+	 * @return true if the file was written
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public boolean dump() {
+		return DataUtils.saveFile(getDumpFile(), (Class<Map>) (Class) Map.class, (Map) snapshot(), "Emojicord Metrics");
+	}
+}